@@ -1,9 +1,11 @@
 package com.meamoria.lexurgy.sc
 
 import com.meamoria.lexurgy.*
+import com.meamoria.lexurgy.sc.element.Matcher
 import com.meamoria.lexurgy.sc.element.Transformation
 import com.meamoria.lexurgy.sc.element.TransformationCatching
 import com.meamoria.lexurgy.sc.element.Transformer
+import com.meamoria.lexurgy.sc.element.firstTransformation
 import com.meamoria.lexurgy.word.*
 
 interface ChangeRule {
@@ -14,8 +16,24 @@ interface ChangeRule {
      * i.e. none of the conditions matched. If
      * rules matched but happened not to change the words,
      * this method returns a result equal to ``phrase`` rather than null.
+     *
+     * If ``stats`` is given, the matching work is counted in it.
      */
-    operator fun invoke(phrase: Phrase): Phrase?
+    operator fun invoke(phrase: Phrase, stats: MatchStats? = null): Phrase?
+
+    /**
+     * Describes everything about this rule that affects its results,
+     * so that checkpoints can tell when the rule has changed. Unlike
+     * ``toString``, this stays the same from one run to the next.
+     */
+    val fingerprint: String
+
+    /**
+     * Rejects phrases that this rule can't possibly match.
+     * Null if the rule might match any phrase.
+     */
+    val guard: SegmentGuard?
+        get() = null
 }
 
 /**
@@ -30,7 +48,13 @@ interface NamedRule : ChangeRule {
 
     val declarations: Declarations
 
-    override fun invoke(phrase: Phrase): Phrase
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase
+
+    /**
+     * Applies the rule like ``invoke``, but returns null
+     * if the rule left the phrase unchanged.
+     */
+    fun changeOrNull(phrase: Phrase, stats: MatchStats? = null): Phrase? = invoke(phrase, stats).takeIf { it != phrase }
 }
 
 enum class RuleType {
@@ -44,10 +68,18 @@ class StandardNamedRule(
     override val declarations: Declarations,
     val mainBlock: ChangeRule,
     override val ruleType: RuleType = RuleType.NORMAL,
-    val filter: ((Segment) -> Boolean)? = null,
+    val filter: SegmentFilter? = null,
 ) : NamedRule {
-    override operator fun invoke(phrase: Phrase): Phrase =
-        mainBlock(phrase) ?: phrase
+    override val guard: SegmentGuard? by lazy { mainBlock.guard }
+
+    override operator fun invoke(phrase: Phrase, stats: MatchStats?): Phrase = changeOrNull(phrase, stats) ?: phrase
+
+    override fun changeOrNull(phrase: Phrase, stats: MatchStats?): Phrase? =
+        if (guard?.admits(phrase) == false) null else mainBlock(phrase, stats)?.takeIf { it != phrase }
+
+    override val fingerprint: String by lazy {
+        "Rule $name ($ruleType, filter ${filter?.fingerprint}) with ${declarations.fingerprint}: ${mainBlock.fingerprint}"
+    }
 
     override fun toString(): String = "Rule $name: $mainBlock"
 }
@@ -56,7 +88,11 @@ class StandardNamedRule(
  * A rule that never matches its input.
  */
 object EmptyRule : ChangeRule {
-    override fun invoke(phrase: Phrase): Phrase? = null
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase? = null
+
+    override val fingerprint: String = "<empty>"
+
+    override val guard: SegmentGuard = SegmentGuard.Never
 }
 
 /**
@@ -66,87 +102,279 @@ object EmptyRule : ChangeRule {
 class SimpleChangeRule(
     val declarations: Declarations,
     val expressions: List<RuleExpression>,
-    val filter: ((Segment) -> Boolean)? = null,
+    val filter: SegmentFilter? = null,
     val matchMode: MatchMode = MatchMode.SIMULTANEOUS,
 ) : ChangeRule {
-    override operator fun invoke(phrase: Phrase): Phrase? =
-        when (matchMode) {
-            MatchMode.SIMULTANEOUS -> matchAndTransformOnce(phrase) { filteredPhrase, _ ->
-                val allTransformations = expressions.mapIndexed { i, expr ->
-                    expr.claimAll(i, filteredPhrase)
-                }.flatten()
-                filterOverlappingClaims(allTransformations)
+    override val guard: SegmentGuard? = SegmentGuard.anyOf(expressions.map { it.guard })
+
+    private val expressionIndex = ExpressionIndex(declarations.segmentInterner, expressions)
+
+    override operator fun invoke(phrase: Phrase, stats: MatchStats?): Phrase? {
+        if (guard?.admits(phrase) == false) {
+            // Directional rules always return a phrase, even if nothing matched
+            return if (matchMode == MatchMode.SIMULTANEOUS) null else phrase
+        }
+        return when (matchMode) {
+            MatchMode.SIMULTANEOUS -> matchAndTransformOnce(filterPhrase(phrase), stats) { filteredPhrase, _ ->
+                filterOverlappingClaims(expressionIndex.claimAll(filteredPhrase, stats))
             }
 
             MatchMode.LEFT_TO_RIGHT -> {
-                var curPhrase = phrase
-                var index = curPhrase.firstIndex
-                while (index <= curPhrase.lastIndex) {
-                    curPhrase = matchAndTransformOnceAt(curPhrase, index)
-                    index = curPhrase.stepForward(index)
+                var cur = filterPhrase(phrase)
+                var index = phrase.firstIndex
+                while (index <= cur.phrase.lastIndex) {
+                    matchAndTransformOnceAt(cur, index, stats)?.let { cur = it }
+                    index = cur.phrase.stepForward(index)
                 }
-                curPhrase
+                cur.phrase
             }
 
             MatchMode.RIGHT_TO_LEFT -> {
-                var curPhrase = phrase
-                var index = curPhrase.lastIndex
-                while (index >= curPhrase.firstIndex) {
-                    curPhrase = matchAndTransformOnceAt(curPhrase, index)
-                    index = curPhrase.stepBack(index)
+                var cur = filterPhrase(phrase)
+                var index = phrase.lastIndex
+                while (index >= cur.phrase.firstIndex) {
+                    matchAndTransformOnceAt(cur, index, stats)?.let { cur = it }
+                    index = cur.phrase.stepBack(index)
                 }
-                curPhrase
+                cur.phrase
             }
         }
+    }
 
-    private fun matchAndTransformOnceAt(
-        phrase: Phrase,
-        index: PhraseIndex,
-    ): Phrase = matchAndTransformOnce(phrase) { filteredPhrase, filterMap ->
-        val filteredIndex = if (filterMap == null) {
-            index
+    private fun filterPhrase(phrase: Phrase): FilteredPhrase =
+        if (filter == null) {
+            FilteredPhrase(phrase, null, phrase, emptyArray())
         } else {
-            // Convert index in the original word into index in the filtered word
-            val filteredSegmentIndex = filterMap[index.wordIndex].indexOf(index.segmentIndex)
-            if (filteredSegmentIndex >= 0) {
-                PhraseIndex(index.wordIndex, filteredSegmentIndex)
-            } else {
-                // The sound at this index doesn't pass the filter, so we can't possibly match here
-                return phrase
+            val (filteredWords, maps) = phrase.map(::filterWord).unzip()
+            FilteredPhrase(phrase, maps, Phrase(filteredWords), arrayOfNulls(phrase.size))
+        }
+
+    /**
+     * A phrase along with its filtered version. Directional rules keep
+     * one of these as they go, so that the phrase only gets filtered
+     * again when a match changes it, rather than at every index, and
+     * then only the words the match changed.
+     */
+    private inner class FilteredPhrase(
+        val phrase: Phrase,
+        /**
+         * For each word, the index in the original word of each
+         * segment of the filtered word, or null if there's no filter
+         */
+        val filterMaps: List<IntArray>?,
+        val filtered: Phrase,
+        // For each word, the index in the filtered word of each segment of
+        // the original word, or -1 if it was filtered out; filled in as needed
+        private val unfilterMaps: Array<IntArray?>,
+    ) {
+        /**
+         * Converts an index in the original phrase into an index in the
+         * filtered phrase, or null if the segment there was filtered out
+         */
+        fun filteredIndex(index: PhraseIndex): PhraseIndex? {
+            if (filterMaps == null) return index
+            val wordIndex = index.wordIndex
+            val unfilterMap = unfilterMaps[wordIndex] ?: IntArray(phrase[wordIndex].length) { -1 }.also { map ->
+                for ((filteredIndex, i) in filterMaps[wordIndex].withIndex()) map[i] = filteredIndex
+                unfilterMaps[wordIndex] = map
             }
+            // The index just past the end of a word can't match a segment either
+            val filteredSegmentIndex = unfilterMap.getOrElse(index.segmentIndex) { -1 }
+            return if (filteredSegmentIndex >= 0) PhraseIndex(wordIndex, filteredSegmentIndex) else null
+        }
+
+        /**
+         * This phrase with the words from ``start`` up to ``end`` replaced
+         * by ``newWords``. Only the new words get filtered.
+         */
+        fun replaceWords(start: Int, end: Int, newWords: List<Word>): FilteredPhrase {
+            val newPhrase = Phrase(phrase.words.splice(start, end, newWords))
+            if (filterMaps == null) return FilteredPhrase(newPhrase, null, newPhrase, unfilterMaps)
+            val (newFilteredWords, newMaps) = newWords.map(::filterWord).unzip()
+            return FilteredPhrase(
+                newPhrase,
+                filterMaps.splice(start, end, newMaps),
+                Phrase(filtered.words.splice(start, end, newFilteredWords)),
+                unfilterMaps.asList().splice(start, end, List(newWords.size) { null }).toTypedArray(),
+            )
         }
-        listOfNotNull(
-            expressions.asSequence().mapIndexed { i, expr ->
-                expr.claimAt(i, filteredPhrase, filteredIndex)?.throwing()
-            }.firstNotNullOfOrNull { it }
+
+        private fun <T> List<T>.splice(start: Int, end: Int, replacement: List<T>): List<T> =
+            ArrayList<T>(size - (end - start) + replacement.size).also {
+                it.addAll(subList(0, start))
+                it.addAll(replacement)
+                it.addAll(subList(end, size))
+            }
+    }
+
+    /**
+     * Whether ``run`` and ``rerun`` can be used on this rule: it has to be
+     * simultaneous with no filter, and every expression can only look
+     * a fixed distance from where it starts matching.
+     */
+    internal val canRerun: Boolean by lazy {
+        matchMode == MatchMode.SIMULTANEOUS && filter == null && expressions.all { it.reach != null }
+    }
+
+    /**
+     * An application of this rule to a phrase with a single unsyllabified
+     * word, remembering where each expression matched and which part of the
+     * word changed, so that the rule can be applied again to the result
+     * without trying to match everywhere.
+     */
+    internal class Run(
+        val input: Word,
+        val result: Phrase,
+        /**
+         * For each expression, the indices in ``input`` where it matched
+         */
+        val matchStarts: List<IntArray>,
+        /**
+         * The segments of ``input`` from ``changeStart`` up to ``inputChangeEnd``
+         * were replaced; everything before and after them is unchanged
+         */
+        val changeStart: Int,
+        val inputChangeEnd: Int,
+    ) {
+        /**
+         * Where the replaced segments end in the result, if the result is a single word
+         */
+        val resultChangeEnd: Int
+            get() = inputChangeEnd + result[0].length - input.length
+
+        /**
+         * Whether the result is different from the input
+         */
+        val changed: Boolean by lazy {
+            result.size != 1 || result[0].isSyllabified() || resultChangeEnd != inputChangeEnd ||
+                    (changeStart until inputChangeEnd).any { input.segments[it] != result[0].segments[it] }
+        }
+
+        companion object {
+            fun canRun(phrase: Phrase): Boolean =
+                phrase.size == 1 && phrase[0] is StandardWord && !phrase[0].isSyllabified()
+        }
+    }
+
+    /**
+     * Applies this rule to a phrase that passes ``Run.canRun``, the same way as ``invoke``.
+     * Returns null if nothing matched.
+     */
+    internal fun run(phrase: Phrase, stats: MatchStats?): Run? {
+        val claims = expressionIndex.claimAll(phrase, stats).groupBy { it.order }
+        return finishRun(phrase, List(expressions.size) { claims[it] ?: emptyList() }, stats)
+    }
+
+    /**
+     * Applies this rule to the result of ``previous``, giving the same result as
+     * ``run``. Matches that can't see the segments ``previous`` changed are
+     * the same as last time, so the expressions are only tried everywhere
+     * near the change, and just where they matched last time elsewhere.
+     */
+    internal fun rerun(previous: Run, stats: MatchStats?): Run? {
+        val phrase = previous.result
+        val shift = previous.resultChangeEnd - previous.inputChangeEnd
+        val claims = List(expressions.size) { mutableListOf<TransformationCatching>() }
+        val errors = arrayOfNulls<Exception>(expressions.size)
+        for ((i, expression) in expressions.withIndex()) {
+            val reach = expression.reach!!
+            val firstRecheck = maxOf(0, previous.changeStart - reach.after + 1)
+            val lastRecheck = minOf(phrase[0].length, previous.resultChangeEnd + reach.before - 1)
+            val starts = previous.matchStarts[i].filter { it < firstRecheck } +
+                    (firstRecheck..lastRecheck) +
+                    previous.matchStarts[i].map { it + shift }.filter { it > lastRecheck }
+            try {
+                for (start in starts) {
+                    expression.claimAt(i, phrase, PhraseIndex(0, start), stats)?.let { claims[i] += it }
+                }
+            } catch (e: Exception) {
+                // An expression stops at its first error, as it would in claimAll
+                errors[i] = e
+            }
+        }
+        errors.firstOrNull { it != null }?.let { throw it }
+        return finishRun(phrase, claims, stats)
+    }
+
+    private fun finishRun(phrase: Phrase, claims: List<List<TransformationCatching>>, stats: MatchStats?): Run? {
+        val transformations = filterOverlappingClaims(claims.flatten())
+        if (transformations.isEmpty()) return null
+        stats?.transformations?.add(transformations.size.toLong())
+        return Run(
+            phrase[0],
+            applyTransformations(phrase, transformations),
+            claims.map { expressionClaims -> IntArray(expressionClaims.size) { expressionClaims[it].start.segmentIndex } },
+            transformations.minOf { it.start.segmentIndex },
+            transformations.maxOf { it.end.segmentIndex },
         )
-    } ?: phrase
+    }
+
+    /**
+     * Tries to match the expressions at the specified index, returning
+     * the changed phrase, or null if nothing matched
+     */
+    private fun matchAndTransformOnceAt(
+        phrase: FilteredPhrase,
+        index: PhraseIndex,
+        stats: MatchStats?,
+    ): FilteredPhrase? {
+        // The sound at this index doesn't pass the filter, so we can't possibly match here
+        val filteredIndex = phrase.filteredIndex(index) ?: return null
+        val transformation = expressions.asSequence().mapIndexed { i, expr ->
+            expr.claimAt(i, phrase.filtered, filteredIndex, stats)?.throwing()
+        }.firstNotNullOfOrNull { it } ?: return null
+        val realTransformations = unfilterTransformations(phrase.phrase, phrase.filterMaps, listOf(transformation))
+        if (realTransformations.isEmpty()) return null
+        stats?.transformations?.add(realTransformations.size.toLong())
+
+        // Only the words the match touched need to be put back together
+        val firstWord = realTransformations.minOf { it.start.wordIndex }
+        val lastWord = realTransformations.maxOf { it.end.wordIndex }
+        val touchedWords = Phrase(phrase.phrase.words.subList(firstWord, lastWord + 1))
+        val newWords = applyTransformations(
+            touchedWords,
+            realTransformations.map { it.shiftWords(-firstWord) },
+        )
+        return phrase.replaceWords(firstWord, lastWord + 1, newWords.words)
+    }
+
+    private fun Transformation.shiftWords(offset: Int): Transformation {
+        fun PhraseIndex.shifted() = PhraseIndex(wordIndex + offset, segmentIndex)
+        return copy(
+            start = start.shifted(),
+            end = end.shifted(),
+            removesSyllableBreaks = removesSyllableBreaks.map { it.shifted() },
+        )
+    }
 
     private inline fun matchAndTransformOnce(
-        phrase: Phrase,
+        phrase: FilteredPhrase,
+        stats: MatchStats?,
         transformationMaker: (Phrase, List<IntArray>?) -> List<Transformation>
     ): Phrase? {
-        val (filteredWords, filterMaps) =
-            if (filter == null) phrase to null else phrase.map(::filterWord).unzip()
-        val filteredPhrase = Phrase(filteredWords.toList())
-        val transformations = transformationMaker(filteredPhrase, filterMaps)
-        val realTransformations = unfilterTransformations(phrase, filterMaps, transformations)
+        val transformations = transformationMaker(phrase.filtered, phrase.filterMaps)
+        val realTransformations = unfilterTransformations(phrase.phrase, phrase.filterMaps, transformations)
         if (realTransformations.isEmpty()) return null
-        return applyTransformations(phrase, realTransformations)
+        stats?.transformations?.add(realTransformations.size.toLong())
+        return applyTransformations(phrase.phrase, realTransformations)
     }
 
     private fun applyTransformations(phrase: Phrase, transformations: List<Transformation>): Phrase {
-        var result = Phrase()
+        val result = PhraseBuilder()
         var previousTransformation: Pair<Transformation, Phrase>? = null
 
         fun addExistingSlice(start: PhraseIndex, end: PhraseIndex? = null) {
             var existingSlice = end?.let { phrase.slice(start, it) } ?: phrase.dropUntil(start)
             if (previousTransformation?.first?.removesSyllableBreakAfter == true)
                 existingSlice = existingSlice.removeLeadingBreak()
-            result = result.concat(
+            result.append(
                 existingSlice
             ) { left, right ->
                 previousTransformation?.let { (transformation, previousNewBit) ->
+                    // Nothing to merge, so skip converting to and from matrices
+                    if (left.isEmpty() && right.isEmpty() && transformation.syllableFeatureChanges.isEmpty()) {
+                        return@let emptyList<Modifier>()
+                    }
                     with (declarations) {
                         var matrix = right.toMatrix().update(left.toMatrix())
                         for (index in previousNewBit.iterateBackFrom(previousNewBit.lastIndex)) {
@@ -169,12 +397,15 @@ class SimpleChangeRule(
             if (cursor() > transformation.start) continue
             addExistingSlice(cursor(), transformation.start)
             if (transformation.removesSyllableBreakBefore) {
-                result = result.removeTrailingBreak()
+                result.removeTrailingBreak()
             }
             val newBit = transformation.finalResult(declarations)
-            result = result.concat(
+            result.append(
                 newBit,
             ) { left, right ->
+                if (left.isEmpty() && right.isEmpty() && transformation.syllableFeatureChanges.isEmpty()) {
+                    return@append emptyList<Modifier>()
+                }
                 with (declarations) {
                     var matrix = left.toMatrix().update(right.toMatrix())
                     for (index in newBit.iterateFrom(newBit.firstIndex)) {
@@ -191,30 +422,27 @@ class SimpleChangeRule(
             previousTransformation = transformation to newBit
         }
         addExistingSlice(cursor())
-        return result
+        return result.build()
     }
 
     private fun filterWord(word: Word): Pair<Word, IntArray> {
-        val filterResult = word.filterSegments(filter!!)
+        val filterResult = word.filterSegments { filter!!(it) }
         return filterResult.word to filterResult.filterMap
     }
 
     // Strips out transformations that would try to change something that's already being changed.
     // Assumes the transformations argument is already sorted in precedence order.
     private fun filterOverlappingClaims(transformations: List<TransformationCatching>): List<Transformation> {
-        val claimed = mutableListOf<ClosedRange<PhraseIndex>>()
         val result = mutableListOf<Transformation>()
         for (transformation in transformations) {
-            val thisClaim = transformation.start.rangeTo(transformation.end)
             var foundOverlap = false
-            for (previousClaim in claimed) {
-                if (thisClaim overlaps previousClaim) {
+            for (previous in result) {
+                if (overlaps(transformation.start, transformation.end, previous.start, previous.end)) {
                     foundOverlap = true
                     break
                 }
             }
             if (foundOverlap) continue
-            claimed += thisClaim
             result += transformation.throwing()
         }
         return result
@@ -242,6 +470,10 @@ class SimpleChangeRule(
         }
     }
 
+    override val fingerprint: String by lazy {
+        "${matchMode.string} (filter ${filter?.fingerprint}): " + expressions.joinToString { it.fingerprint }
+    }
+
     override fun toString(): String = expressions.joinToString().ifBlank { "<no changes>" }
 }
 
@@ -254,13 +486,31 @@ enum class MatchMode(val string: String) {
     RIGHT_TO_LEFT("rtl"),
 }
 
+/**
+ * Decides which segments a rule can see, along with a fingerprint
+ * describing the decision for checkpoints
+ */
+class SegmentFilter(val fingerprint: String, private val passes: (Segment) -> Boolean) {
+    operator fun invoke(segment: Segment): Boolean = passes(segment)
+
+    /**
+     * A filter that only passes segments that pass both this filter and ``other``
+     */
+    infix fun and(other: SegmentFilter): SegmentFilter =
+        SegmentFilter("$fingerprint & ${other.fingerprint}") { this(it) && other(it) }
+
+    override fun toString(): String = fingerprint
+}
+
 /**
  * A change rule that imposes new declarations by
  * re-parsing the input phrase to match the new declarations
  */
 class Redeclaration(val newDeclarations: Declarations) : ChangeRule {
-    override fun invoke(phrase: Phrase): Phrase =
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase =
         Phrase(phrase.map(newDeclarations::parsePhonetic))
+
+    override val fingerprint: String by lazy { "Redeclare ${newDeclarations.fingerprint}" }
 }
 
 /**
@@ -269,15 +519,19 @@ class Redeclaration(val newDeclarations: Declarations) : ChangeRule {
 class SequentialBlock(
     val subrules: List<ChangeRule>
 ) : ChangeRule {
-    override fun invoke(phrase: Phrase): Phrase? {
+    override val guard: SegmentGuard? by lazy { SegmentGuard.anyOf(subrules.map { it.guard }) }
+
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase? {
         var somethingMatched = false
         var curPhrase = phrase
         for (subrule in subrules) {
-            curPhrase = subrule(curPhrase)?.also { somethingMatched = true } ?: curPhrase
+            curPhrase = subrule(curPhrase, stats)?.also { somethingMatched = true } ?: curPhrase
         }
         return curPhrase.takeIf { somethingMatched }
     }
 
+    override val fingerprint: String by lazy { subrules.joinToString("\nThen:\n") { it.fingerprint } }
+
     override fun toString(): String = subrules.joinToString("\nThen:\n")
 }
 
@@ -287,13 +541,17 @@ class SequentialBlock(
 class FirstMatchingBlock(
     val subrules: List<ChangeRule>
 ) : ChangeRule {
-    override fun invoke(phrase: Phrase): Phrase? {
+    override val guard: SegmentGuard? by lazy { SegmentGuard.anyOf(subrules.map { it.guard }) }
+
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase? {
         for (subrule in subrules) {
-            subrule(phrase)?.let { return it }
+            subrule(phrase, stats)?.let { return it }
         }
         return null
     }
 
+    override val fingerprint: String by lazy { subrules.joinToString("\nElse:\n") { it.fingerprint } }
+
     override fun toString(): String = subrules.joinToString("\nElse:\n")
 }
 
@@ -303,13 +561,17 @@ class FirstMatchingBlock(
 class WithinWordBlock(
     val subrule: ChangeRule
 ) : ChangeRule {
-    override fun invoke(phrase: Phrase): Phrase? {
+    override val guard: SegmentGuard? by lazy { subrule.guard }
+
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase? {
         var somethingMatched = false
         val result = phrase.map {
-            subrule(Phrase(it))?.single()?.also { somethingMatched = true } ?: it
+            subrule(Phrase(it), stats)?.single()?.also { somethingMatched = true } ?: it
         }
         return Phrase(result).takeIf { somethingMatched }
     }
+
+    override val fingerprint: String by lazy { "Within each word: ${subrule.fingerprint}" }
 }
 
 /**
@@ -321,34 +583,169 @@ class PropagateBlock(
 ) : ChangeRule {
     private val maxPropagateSteps = 100
 
-    override fun invoke(phrase: Phrase): Phrase? {
+    override val guard: SegmentGuard? by lazy { subrule.guard }
+
+    override val fingerprint: String by lazy { "Propagate: ${subrule.fingerprint}" }
+
+    // Simple rules can be reapplied just around the last change
+    private val rerunnableSubrule = (subrule as? SimpleChangeRule)?.takeIf { it.canRerun }
+
+    override fun invoke(phrase: Phrase, stats: MatchStats?): Phrase? {
         var curPhrase = phrase
-        val steps = mutableSetOf(curPhrase)
+        // Only the hashes of the earlier steps are kept. Since hashes can
+        // collide, a repeated hash is checked by replaying the steps.
+        val stepHashes = IntArray(maxPropagateSteps + 1)
+        stepHashes[0] = SegmentHash.of(phrase)
+        val recentSteps = ArrayDeque<Phrase>().apply { add(phrase) }
+        var lastRun: SimpleChangeRule.Run? = null
         for (i in 1..maxPropagateSteps) {
-            val newPhrase = subrule(curPhrase) ?: return if (i == 1) null else curPhrase
-            if (newPhrase == curPhrase) return newPhrase
-            if (newPhrase in steps) throw LscDivergingPropagation(this, phrase.string, steps.map { it.string })
-            steps += newPhrase
+            // Most words don't change at all, so the first step is always an ordinary one
+            val rerunnable = rerunnableSubrule?.takeIf { i > 1 && SimpleChangeRule.Run.canRun(curPhrase) }
+            val newPhrase: Phrase
+            val hash: Int
+            if (rerunnable == null) {
+                newPhrase = subrule(curPhrase, stats) ?: return if (i == 1) null else curPhrase
+                if (newPhrase == curPhrase) return newPhrase
+                hash = SegmentHash.of(newPhrase)
+                lastRun = null
+            } else {
+                val previousRun = lastRun
+                val run = if (previousRun == null) rerunnable.run(curPhrase, stats)
+                else rerunnable.rerun(previousRun, stats)
+                if (run == null) return curPhrase
+                if (!run.changed) return run.result
+                newPhrase = run.result
+                hash = SegmentHash.update(stepHashes[i - 1], run)
+                lastRun = run
+            }
+            if ((0 until i).any { stepHashes[it] == hash }) {
+                val steps = replay(phrase, i - 1)
+                if (newPhrase in steps) throw LscDivergingPropagation(this, phrase.string, steps.map { it.string })
+            }
+            stepHashes[i] = hash
+            recentSteps.addLast(newPhrase)
+            if (recentSteps.size > 5) recentSteps.removeFirst()
             curPhrase = newPhrase
         }
-        throw LscDivergingPropagation(this, phrase.string, steps.map { it.string }.takeLast(5))
+        throw LscDivergingPropagation(this, phrase.string, recentSteps.map { it.string })
+    }
+
+    /**
+     * The phrase after each of the first ``numSteps`` steps, starting with the phrase itself
+     */
+    private fun replay(phrase: Phrase, numSteps: Int): List<Phrase> {
+        val steps = mutableListOf(phrase)
+        repeat(numSteps) { steps += subrule(steps.last())!! }
+        return steps
+    }
+
+    /**
+     * Hashes the segments of a phrase as a polynomial with a term for each
+     * segment, so that a step that only changes a few segments only changes
+     * a few terms. Syllables are left out; they just make collisions likelier.
+     */
+    private object SegmentHash {
+        private const val BASE = 31
+
+        // Stands in for the gap between words
+        private const val WORD_BREAK = 0x5f3759df
+
+        fun of(phrase: Phrase): Int {
+            var hash = 0
+            var power = 1
+            for ((wordIndex, word) in phrase.words.withIndex()) {
+                if (wordIndex > 0) {
+                    hash += WORD_BREAK * power
+                    power *= BASE
+                }
+                for (segment in word.segments) {
+                    hash += segment.hashCode() * power
+                    power *= BASE
+                }
+            }
+            return hash
+        }
+
+        /**
+         * The hash of the result of ``run``, given the hash of its input
+         */
+        fun update(inputHash: Int, run: SimpleChangeRule.Run): Int {
+            if (!SimpleChangeRule.Run.canRun(run.result)) return of(run.result)
+            val input = run.input.segments
+            val result = run.result[0].segments
+            // If the length changed, so did the powers for everything after the change
+            val sameLength = input.size == result.size
+            val power = pow(run.changeStart)
+            return inputHash -
+                    terms(input, run.changeStart, if (sameLength) run.inputChangeEnd else input.size, power) +
+                    terms(result, run.changeStart, if (sameLength) run.resultChangeEnd else result.size, power)
+        }
+
+        private fun terms(segments: List<Segment>, start: Int, end: Int, startPower: Int): Int {
+            var hash = 0
+            var power = startPower
+            for (i in start until end) {
+                hash += segments[i].hashCode() * power
+                power *= BASE
+            }
+            return hash
+        }
+
+        private fun pow(exponent: Int): Int {
+            var result = 1
+            var base = BASE
+            var remaining = exponent
+            while (remaining > 0) {
+                if (remaining and 1 == 1) result *= base
+                base *= base
+                remaining = remaining shr 1
+            }
+            return result
+        }
     }
 }
 
 class RuleExpression(
     val declarations: Declarations,
+    val matcher: Matcher,
     val transformer: Transformer,
 ) {
+    /**
+     * Rejects phrases that this expression can't possibly match
+     */
+    val guard: SegmentGuard? = SegmentGuard.forMatcher(matcher)
+
+    /**
+     * Finds the indices where this expression could match in a single pass,
+     * if the expression is simple enough
+     */
+    private val scanner: RegularScanner? = RegularScanner.forMatcher(declarations.segmentInterner, matcher)
+
+    /**
+     * How far this expression can look from where it starts matching,
+     * or null if there's no fixed bound
+     */
+    internal val reach: Reach? by lazy { Reach.of(matcher) }
+
+    /**
+     * Returns, for each index of the specified word, whether this expression
+     * could start matching there; or null if the expression is too complicated
+     * to tell without matching it at every index
+     */
+    internal fun matchStarts(word: Word): BooleanArray? = scanner?.matchStarts(word)
+
     /**
      * Finds all indices where this expression matches the specified phrase,
      * and returns a Transformation for each match.
      */
-    fun claimAll(expressionNumber: Int, phrase: Phrase): List<TransformationCatching> {
+    fun claimAll(expressionNumber: Int, phrase: Phrase, stats: MatchStats? = null): List<TransformationCatching> {
+        if (scanner != null) return claimAllScanned(scanner, expressionNumber, phrase, stats)
+
         var index = PhraseIndex(0, 0)
         val result = mutableListOf<TransformationCatching>()
 
         while (true) {
-            val transformation = claimNext(expressionNumber, phrase, index) ?: break
+            val transformation = claimNext(expressionNumber, phrase, index, stats) ?: break
             result += transformation
             index = phrase.stepForward(transformation.start)
         }
@@ -356,9 +753,34 @@ class RuleExpression(
         return result
     }
 
-    private fun claimNext(expressionNumber: Int, phrase: Phrase, start: PhraseIndex): TransformationCatching? {
-        for (matchStart in phrase.iterateFrom(start)) {
-            return claimAt(expressionNumber, phrase, matchStart) ?: continue
+    // Only tries to match at the indices the scanner finds
+    private fun claimAllScanned(
+        scanner: RegularScanner,
+        expressionNumber: Int,
+        phrase: Phrase,
+        stats: MatchStats?,
+    ): List<TransformationCatching> {
+        val result = mutableListOf<TransformationCatching>()
+        for ((wordIndex, word) in phrase.words.withIndex()) {
+            val matchStarts = scanner.matchStarts(word)
+            for (segmentIndex in matchStarts.indices) {
+                if (!matchStarts[segmentIndex]) continue
+                result += claimAt(expressionNumber, phrase, PhraseIndex(wordIndex, segmentIndex), stats) ?: continue
+            }
+        }
+        return result
+    }
+
+    private fun claimNext(
+        expressionNumber: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        stats: MatchStats?,
+    ): TransformationCatching? {
+        var matchStart = start
+        while (matchStart.wordIndex < phrase.size) {
+            claimAt(expressionNumber, phrase, matchStart, stats)?.let { return it }
+            matchStart = phrase.stepForward(matchStart)
         }
         return null
     }
@@ -366,15 +788,29 @@ class RuleExpression(
     /**
      * Tries to match this expression at the specified index in the specified phrase.
      * Returns a Transformation if the expression matched, null otherwise.
+     * The attempt is counted in ``stats``, if given.
      */
-    fun claimAt(expressionNumber: Int, phrase: Phrase, index: PhraseIndex): TransformationCatching? {
-        val bindings = Bindings()
-        val transformation = transformer.transform(
+    fun claimAt(
+        expressionNumber: Int,
+        phrase: Phrase,
+        index: PhraseIndex,
+        stats: MatchStats? = null,
+    ): TransformationCatching? {
+        stats?.claimAttempts?.increment()
+        val bindings = Bindings.EMPTY
+        val transformation = transformer.firstTransformation(
             expressionNumber, phrase, index, bindings
-        ).firstOrNull() ?: return null
+        ) ?: return null
+        stats?.claims?.increment()
         return transformation.bindVariablesCatching()
     }
 
+    /**
+     * Describes this expression for checkpoint fingerprints
+     */
+    val fingerprint: String
+        get() = "$transformer"
+
     override fun toString(): String = "$transformer"
 }
 
@@ -0,0 +1,208 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.word.*
+
+/**
+ * Somewhere to keep the state of a batch of words part way through
+ * the sound changes, so that a later run can pick up from there.
+ */
+interface CheckpointStore {
+    /**
+     * Returns the checkpoint saved under the specified key,
+     * or null if there isn't one
+     */
+    fun load(key: String): Checkpoint?
+
+    fun save(key: String, checkpoint: Checkpoint)
+
+    /**
+     * Returns the fingerprint of the checkpoint saved under the specified
+     * key, or null if there isn't one. Stores that can check the fingerprint
+     * without loading the whole checkpoint should override this.
+     */
+    fun fingerprint(key: String): String? = load(key)?.fingerprint
+}
+
+/**
+ * A checkpoint store that only lasts as long as the process
+ */
+class InMemoryCheckpointStore : CheckpointStore {
+    private val checkpoints = mutableMapOf<String, Checkpoint>()
+
+    val keys: Set<String>
+        get() = checkpoints.keys
+
+    override fun load(key: String): Checkpoint? = checkpoints[key]
+
+    override fun save(key: String, checkpoint: Checkpoint) {
+        checkpoints[key] = checkpoint
+    }
+}
+
+/**
+ * The phrases in a batch of words just before a particular rule.
+ *
+ * @param fingerprint Identifies the input words and everything that ran
+ * before the checkpoint; the checkpoint is stale if this doesn't match.
+ * @param phrases The phrase for each word, or null if the word had already
+ * failed with an error (errors aren't saved, so these words have to be
+ * changed from scratch)
+ * @param intermediates The output of each intermediate romanizer that ran
+ * before the checkpoint, with null for the words that failed
+ */
+class Checkpoint(
+    val fingerprint: String,
+    val phrases: List<Phrase?>,
+    val intermediates: Map<String, List<String?>> = emptyMap(),
+) {
+    /**
+     * Encodes this checkpoint compactly as text, one line per word
+     * and stage. Syllable structure is preserved.
+     */
+    fun encode(): String {
+        val lines = mutableListOf(fingerprint, intermediates.size.toString())
+        for ((stage, stageWords) in intermediates) {
+            lines += stage
+            lines += stageWords.map { it ?: FAILED }
+        }
+        lines += phrases.map { it?.let(::encodePhrase) ?: FAILED }
+        return lines.joinToString("\n")
+    }
+
+    companion object {
+        // Control characters never turn up in parsed phonetic forms
+        // or romanized words, so they're safe to use as markers
+        private const val WORD_SEPARATOR = '\u001C'
+        private const val PART_SEPARATOR = '\u001D'
+        private const val SEGMENT_SEPARATOR = '\u001E'
+        private const val MODIFIER_MARKER = '\u001F'
+        private const val FAILED = "\u0015"
+        private const val UNSYLLABIFIED = "-"
+
+        /**
+         * Decodes a checkpoint encoded with ``encode``, throwing
+         * an IllegalArgumentException if the text is malformed
+         * (e.g. because it was cut short)
+         */
+        fun decode(text: String): Checkpoint = try {
+            decodeUnchecked(text)
+        } catch (e: IndexOutOfBoundsException) {
+            throw IllegalArgumentException("Malformed checkpoint", e)
+        }
+
+        /**
+         * Decodes a checkpoint like ``decode``, but returns null if the text is malformed
+         */
+        fun decodeOrNull(text: String): Checkpoint? = try {
+            decode(text)
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+
+        private fun decodeUnchecked(text: String): Checkpoint {
+            val lines = text.split("\n")
+            val stageCount = lines[1].toInt()
+            val wordLines = lines.size - 2 - stageCount
+            require(stageCount >= 0 && wordLines >= 0 && wordLines % (stageCount + 1) == 0) {
+                "Malformed checkpoint"
+            }
+            val wordCount = wordLines / (stageCount + 1)
+            val intermediates = (0 until stageCount).associate { stage ->
+                val start = 2 + stage * (wordCount + 1)
+                lines[start] to lines.subList(start + 1, start + 1 + wordCount).map { it.takeIf { it != FAILED } }
+            }
+            return Checkpoint(
+                lines[0],
+                lines.takeLast(wordCount).map { if (it == FAILED) null else decodePhrase(it) },
+                intermediates,
+            )
+        }
+
+        private fun encodePhrase(phrase: Phrase): String =
+            phrase.words.joinToString(WORD_SEPARATOR.toString()) { encodeWord(it.toStandard()) }
+
+        private fun decodePhrase(text: String): Phrase =
+            Phrase(text.split(WORD_SEPARATOR).map(::decodeWord))
+
+        // A word is its segments, then its syllable breaks,
+        // then the modifiers on each syllable
+        private fun encodeWord(word: StandardWord): String {
+            val segments = word.segments.joinToString(SEGMENT_SEPARATOR.toString()) {
+                it.core + encodeModifiers(it.modifiers)
+            }
+            val breaks =
+                if (word.isSyllabified()) "s" + word.syllableBreaks.joinToString(",")
+                else UNSYLLABIFIED
+            val syllableModifiers = word.syllableModifiers.entries.joinToString("") { (index, modifiers) ->
+                PART_SEPARATOR + index.toString() + encodeModifiers(modifiers)
+            }
+            return segments + PART_SEPARATOR + breaks + syllableModifiers
+        }
+
+        private fun decodeWord(text: String): StandardWord {
+            val parts = text.split(PART_SEPARATOR)
+            val segments = if (parts[0].isEmpty()) emptyList() else parts[0].split(SEGMENT_SEPARATOR).map {
+                val (core, modifiers) = decodeModified(it)
+                Segment(core, modifiers)
+            }
+            val word = StandardWord(segments)
+            if (parts[1] == UNSYLLABIFIED) return word
+            val breaks = parts[1].drop(1).split(",").filter { it.isNotEmpty() }.map { it.toInt() }
+            val syllableModifiers = parts.drop(2).associate {
+                val (index, modifiers) = decodeModified(it)
+                index.toInt() to modifiers
+            }
+            return word.withSyllabification(breaks, syllableModifiers)
+        }
+
+        private fun encodeModifiers(modifiers: List<Modifier>): String =
+            modifiers.joinToString("") { MODIFIER_MARKER + it.position.ordinal.toString() + it.string }
+
+        private fun decodeModified(text: String): Pair<String, List<Modifier>> {
+            val fields = text.split(MODIFIER_MARKER)
+            return fields.first() to fields.drop(1).map {
+                Modifier(it.drop(1), ModifierPosition.values()[it.take(1).toInt()])
+            }
+        }
+
+        /**
+         * Hashes the specified parts into a fingerprint. This needs to
+         * be stable between runs (and platforms), so it doesn't rely on
+         * ``hashCode``.
+         */
+        fun fingerprint(parts: Iterable<String>): String =
+            Fingerprinter().apply { parts.forEach { add(it) } }.value
+
+        /**
+         * Fingerprints each prefix of ``steps`` (from the empty prefix
+         * to all of them), with every fingerprint also covering ``base``
+         */
+        fun fingerprints(base: Iterable<String>, steps: List<String>): List<String> {
+            val fingerprinter = Fingerprinter()
+            base.forEach(fingerprinter::add)
+            val result = mutableListOf(fingerprinter.value)
+            for (step in steps) {
+                fingerprinter.add(step)
+                result += fingerprinter.value
+            }
+            return result
+        }
+    }
+
+    // 64-bit FNV-1a
+    private class Fingerprinter {
+        private var hash = -0x340d631b7bdddcdbL
+
+        fun add(part: String) {
+            for (char in part) addChar(char)
+            addChar('\u0000')
+        }
+
+        private fun addChar(char: Char) {
+            hash = (hash xor char.code.toLong()) * 0x100000001b3L
+        }
+
+        val value: String
+            get() = hash.toULong().toString(16)
+    }
+}
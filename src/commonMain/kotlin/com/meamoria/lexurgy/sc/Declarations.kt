@@ -9,13 +9,32 @@ class Declarations(
     val diacritics: List<Diacritic>,
     val symbols: List<Symbol>,
     val syllabifier: Syllabifier? = null,
+    /**
+     * Assigns ids to segments for rule guards. Declarations derived
+     * from these ones (using ``copy``) share the same interner.
+     */
+    val segmentInterner: SegmentInterner = SegmentInterner(),
+    /**
+     * The maximum number of entries in each of the caches
+     * these declarations use to speed up lookups
+     */
+    val cacheSize: Int = DEFAULT_CACHE_SIZE,
 ) {
+    /**
+     * Summarizes everything in these declarations that affects how words
+     * change, so that checkpoints can tell when they've changed. This
+     * stays the same from one run to the next.
+     */
+    val fingerprint: String by lazy {
+        "${features.map { it.fingerprint }} $diacritics $symbols ${syllabifier?.patterns}"
+    }
+
     private val featureNameToFeatureMap = features.associateByCheckingDuplicates(
         { listOf(it.name) },
         { name, _, _ -> throw LscDuplicateName("feature", name) }
     )
-    private val defaults = features.map { it.default }
-    private val absents = features.map { it.absent }
+    private val defaults = features.map { it.default }.toSet()
+    private val absents = features.map { it.absent }.toSet()
     private val valueToFeature = features.associateByCheckingDuplicates(
         { it.allValues },
         { value, _, _ -> throw LscDuplicateName("feature value", value.name) },
@@ -54,12 +73,59 @@ class Declarations(
         { matrix, new, existing -> throw LscDuplicateMatrices(matrix, "symbols", new.name, existing.name) },
     )
 
-    private val matrixFullValueSetCache = Cache<Matrix, Set<MatrixValue>>()
-    private val matrixSimpleValueCache = Cache<Matrix, Set<SimpleValue>>()
-    private val matrixToSymbolCache = Cache<Matrix, Segment>()
-    private val phoneticSegmentToComplexSymbolCache = Cache<Segment, ComplexSymbol>()
-    private val phoneticSegmentMatchCache = Cache<Pair<Segment, Segment>, Boolean>()
-    private val undeclaredSymbolCache = Cache<String, Symbol>()
+    private val featureIndex = FeatureIndex(features)
+
+    private val matrixFullValueSetCache = Cache<Matrix, Set<MatrixValue>>(cacheSize)
+    private val matrixSimpleValueCache = Cache<Matrix, Set<SimpleValue>>(cacheSize)
+    private val matrixToSymbolCache = Cache<Matrix, Segment>(cacheSize)
+    private val matrixToModifiersCache = Cache<Matrix, List<Modifier>>(cacheSize)
+    // Only the symbols with diacritics; the plain symbols are in seededSymbolIndex
+    private val symbolIndex = Cache<SymbolSignature, SearchResult>(cacheSize)
+    private val diacriticsOnlyIndex = Cache<SymbolSignature, SearchResult>(cacheSize)
+    private val phoneticSegmentToComplexSymbolCache = Cache<Segment, ComplexSymbol>(cacheSize)
+    // Keyed by the segment and the pattern themselves, rather than their
+    // interned ids, so that looking up a segment doesn't intern it
+    private val phoneticSegmentMatchCache = Cache<Pair<Segment, Segment>, Boolean>(cacheSize)
+    private val undeclaredSymbolCache = Cache<String, Symbol>(cacheSize)
+
+    private val caches: Map<String, Cache<*, *>> = mapOf(
+        "matrixFullValueSet" to matrixFullValueSetCache,
+        "matrixSimpleValue" to matrixSimpleValueCache,
+        "matrixToSymbol" to matrixToSymbolCache,
+        "matrixToModifiers" to matrixToModifiersCache,
+        "symbolIndex" to symbolIndex,
+        "diacriticsOnlyIndex" to diacriticsOnlyIndex,
+        "phoneticSegmentToComplexSymbol" to phoneticSegmentToComplexSymbolCache,
+        "phoneticSegmentMatch" to phoneticSegmentMatchCache,
+        "undeclaredSymbol" to undeclaredSymbolCache,
+    )
+
+    /**
+     * The statistics for each of the caches, by name
+     * (including the syllabifier's, if there is one)
+     */
+    val cacheStats: Map<String, CacheStats>
+        get() = caches.mapValues { it.value.stats } +
+                (syllabifier?.let { mapOf("syllabification" to it.cacheStats) } ?: emptyMap())
+
+    fun resetCacheStats() {
+        caches.values.forEach { it.resetStats() }
+        syllabifier?.resetCacheStats()
+    }
+
+    fun clearCaches() {
+        caches.values.forEach { it.clear() }
+        syllabifier?.clearCache()
+    }
+
+    private val diacriticMasks: Map<Diacritic, Pair<LongArray, LongArray>> =
+        normalizedDiacritics.associateWith { diacriticMask(it) }
+
+    // The plain symbols, the most common lookups, kept out of the bounded
+    // cache so that they're never evicted. Going backwards means the first
+    // of any symbols with the same values wins, just as it would in a search.
+    private val seededSymbolIndex: Map<SymbolSignature, ComplexSymbol> =
+        symbolsAsComplexSymbols.asReversed().associateBy { SymbolSignature(it.mask(), null) }
 
     private fun checkUndefinedFeatures(matrices: List<Matrix>) {
         for (value in matrices.flatMap { it.explicitSimpleValues }) {
@@ -137,6 +203,8 @@ class Declarations(
         diacritics ?: this.diacritics,
         symbols ?: this.symbols,
         syllabifier ?: this.syllabifier,
+        segmentInterner,
+        cacheSize,
     )
 
     fun parsePhonetic(text: String, syllabify: Boolean = true): Word =
@@ -145,7 +213,7 @@ class Declarations(
     fun parsePhonetic(word: Word): Word = parsePhonetic(word.string)
 
     private fun Word.fixDiacriticOrder(): Word {
-        val fixed = StandardWord(segments.map { it.toMatrix().toSymbol() })
+        val fixed = StandardWord(segments.map { it.toMatrix().toSymbol() }).pack(segmentInterner)
         return if (isSyllabified()) {
             fixed.withSyllabification(
                 syllableBreaks, syllableModifiers
@@ -175,9 +243,10 @@ class Declarations(
      * any number of floating diacritics.
      */
     fun Segment.matches(pattern: Segment): Boolean {
-        phoneticSegmentMatchCache[this to pattern]?.let { return it }
-
         if (floatingDiacritics.isEmpty()) return this == pattern
+        val key = this to pattern
+        phoneticSegmentMatchCache[key]?.let { return it }
+
         val thisSymbol = this.toComplexSymbol()
         if (!thisSymbol.diacritics.any { it.floating }) return this == pattern
         val patternSymbol = pattern.toComplexSymbol()
@@ -187,7 +256,7 @@ class Declarations(
             availableDiacritics = floatingDiacritics
         )
         return (symbolWithDiacritics == this.toComplexSymbol()).also {
-            phoneticSegmentMatchCache[this to pattern] = it
+            phoneticSegmentMatchCache[key] = it
         }
     }
 
@@ -319,22 +388,43 @@ class Declarations(
     }
 
     fun Matrix.toModifiers(): List<Modifier> =
-        toDiacritics().map { it.toModifier() }
+        matrixToModifiersCache.getOrPut(this) { toDiacritics().map { it.toModifier() } }
 
     fun Matrix.toDiacritics(): List<Diacritic> {
         val matrix = removeExplicitDefaults()
         if (matrix.valueList.isEmpty()) return emptyList()
-        val matchingSymbol = addDiacriticsToMatch(matrix, startingCandidates = listOf(ComplexSymbol()))
+        val signature = SymbolSignature(matrix.simpleMask(featureIndex), null)
+        val matchingSymbol = diacriticsOnlyIndex.getOrPut(signature) {
+            SearchResult(addDiacriticsToMatch(matrix, startingCandidates = listOf(ComplexSymbol())))
+        }.symbol
         return matchingSymbol?.diacritics ?: throw LscInvalidMatrix(matrix)
     }
 
+    // The search below only looks at the feature values (and the undeclared
+    // symbol, if there is one), so matrices with the same values always
+    // lead to the same symbol, however they're written. The mask is compared
+    // by its contents, and mustn't be modified once it's in a signature.
+    private class SymbolSignature(val mask: LongArray, val undeclaredSymbol: String?) {
+        override fun equals(other: Any?): Boolean =
+            other is SymbolSignature && mask.contentEquals(other.mask) && undeclaredSymbol == other.undeclaredSymbol
+
+        override fun hashCode(): Int = 31 * mask.contentHashCode() + undeclaredSymbol.hashCode()
+    }
+
+    private class SearchResult(val symbol: ComplexSymbol?)
+
     private fun findSymbolWithDiacriticsMatching(matrix: Matrix): ComplexSymbol? {
-        val startingCandidates = if (matrix.hasUndeclaredSymbol()) {
-            listOf(complexSymbol(matrix.undeclaredSymbol()))
-        } else {
-            symbolsAsComplexSymbols
-        }
-        return addDiacriticsToMatch(matrix, startingCandidates = startingCandidates)
+        val undeclaredSymbol = if (matrix.hasUndeclaredSymbol()) matrix.undeclaredSymbol() else null
+        val signature = SymbolSignature(matrix.simpleMask(featureIndex), undeclaredSymbol?.name)
+        seededSymbolIndex[signature]?.let { return it }
+        return symbolIndex.getOrPut(signature) {
+            val startingCandidates = if (undeclaredSymbol != null) {
+                listOf(complexSymbol(undeclaredSymbol))
+            } else {
+                symbolsAsComplexSymbols
+            }
+            SearchResult(addDiacriticsToMatch(matrix, startingCandidates = startingCandidates))
+        }.symbol
     }
 
     private fun addDiacriticsToMatch(
@@ -343,29 +433,31 @@ class Declarations(
         availableDiacritics: List<Diacritic> = normalizedDiacritics,
     ): ComplexSymbol? {
         return recursivelyAddDiacriticsToMatch(
-            matrix,
+            matrix.simpleMask(featureIndex),
             startingCandidates = startingCandidates,
             availableDiacritics = availableDiacritics,
         )
     }
 
     private fun recursivelyAddDiacriticsToMatch(
-        matrix: Matrix,
+        target: LongArray,
         startingCandidates: List<ComplexSymbol>,
         availableDiacritics: List<Diacritic> = normalizedDiacritics,
         bestDistance: Int? = null,
     ): ComplexSymbol? {
         if (startingCandidates.isEmpty()) return null
-        val sortedCandidates = startingCandidates.sortedBy { it.distanceTo(matrix) }
-        sortedCandidates.first().takeIf { it.distanceTo(matrix) == 0 }?.let { return it }
+        val distances = with(featureIndex) { startingCandidates.map { it.mask().distanceTo(target) } }
+        val sortedIndices = startingCandidates.indices.sortedBy { distances[it] }
+        if (distances[sortedIndices.first()] == 0) return startingCandidates[sortedIndices.first()]
         if (availableDiacritics.isEmpty()) return null
 
-        for (candidate in sortedCandidates) {
-            val candidateDistance = candidate.distanceTo(matrix)
+        for (index in sortedIndices) {
+            val candidate = startingCandidates[index]
+            val candidateDistance = distances[index]
             if (bestDistance != null && candidateDistance >= bestDistance) return null
             val withDiacritics = availableDiacritics.map { candidate.withDiacritic(it) }
             recursivelyAddDiacriticsToMatch(
-                matrix,
+                target,
                 withDiacritics,
                 availableDiacritics,
                 candidateDistance,
@@ -374,12 +466,24 @@ class Declarations(
         return null
     }
 
-    private fun ComplexSymbol.distanceTo(matrix: Matrix): Int {
-        val symbolMatrix = toMatrix()
-        val difference = (matrix.simpleValues.filterNot { it in symbolMatrix.simpleValues } +
-                symbolMatrix.simpleValues.filterNot { it in matrix.simpleValues }
-                )
-        return difference.size
+    /**
+     * The mask of this symbol's matrix, worked out directly from the masks
+     * of the symbol and its diacritics rather than by building the matrix
+     */
+    private fun ComplexSymbol.mask(): LongArray {
+        val result = (symbol?.matrix ?: Matrix.EMPTY).simpleMask(featureIndex).copyOf()
+        for (diacritic in diacritics) {
+            val (featureMask, valueMask) = diacriticMasks[diacritic] ?: diacriticMask(diacritic)
+            for (i in result.indices) {
+                result[i] = result[i] and featureMask[i].inv() or valueMask[i]
+            }
+        }
+        return result
+    }
+
+    private fun diacriticMask(diacritic: Diacritic): Pair<LongArray, LongArray> {
+        val values = diacritic.matrix.explicitSimpleValues
+        return featureIndex.featureMaskOf(values) to featureIndex.maskOf(values)
     }
 
     private fun Matrix.removeExplicitDefaults(): Matrix =
@@ -391,13 +495,19 @@ class Declarations(
      * override values for the same feature in this matrix.
      */
     fun Matrix.update(updateMatrix: Matrix): Matrix {
-        val oldMatrixFeatures = simpleValues.associateBy { it.toFeature() }
-        val newMatrixValues = valueList.toMutableList()
-        for (value in updateMatrix.valueList) {
-            val updateFeature = (value as SimpleValue).toFeature()
-            oldMatrixFeatures[updateFeature]?.let { newMatrixValues.remove(it) }
-            if (!value.isDefault())
-                newMatrixValues += value
+        val updateValues = updateMatrix.valueList.map { value ->
+            (value as SimpleValue).also { it.toFeature() }
+        }
+        val updatedFeatures = featureIndex.featureMaskOf(updateValues)
+        val newMatrixValues = ArrayList<MatrixValue>(valueList.size + updateValues.size)
+        with(featureIndex) {
+            for (value in valueList) {
+                val bit = (value as? SimpleValue)?.let { bitOf(it) }
+                if (bit == null || bit !in updatedFeatures) newMatrixValues += value
+            }
+        }
+        for (value in updateValues) {
+            if (!value.isDefault()) newMatrixValues += value
         }
         return Matrix(newMatrixValues)
     }
@@ -418,13 +528,44 @@ class Declarations(
         }.mapValues { (_, v) -> Matrix(v) }
 
     fun Matrix.matches(matrix: Matrix, bindings: Bindings): Bindings? {
+        val pattern = matrix.compiledPattern(featureIndex) { matrix.compile() }
+        with(featureIndex) {
+            val mask = simpleMask(featureIndex)
+            if (!mask.containsAll(pattern.required) || mask.intersects(pattern.forbidden)) return null
+        }
         var result = bindings
-        for (value in matrix.valueList) {
-            value.matches(this, bindings)?.let { result = result.combine(it) } ?: return null
+        for (value in pattern.others) {
+            val valueBindings = value.matches(this, bindings) ?: return null
+            // Most values just hand back the bindings they were given
+            if (valueBindings !== bindings) result = result.combine(valueBindings)
         }
         return result
     }
 
+    private fun Matrix.compile(): CompiledPattern {
+        val required = mutableListOf<SimpleValue>()
+        val forbidden = mutableListOf<SimpleValue>()
+        val others = mutableListOf<MatrixValue>()
+        for (value in valueList) {
+            when (value) {
+                is SimpleValue -> required += value.name.toSimpleValue()
+                is NegatedValue -> forbidden += value.value.toSimpleValue()
+                else -> others += value
+            }
+        }
+        return CompiledPattern(featureIndex.maskOf(required), featureIndex.maskOf(forbidden), others)
+    }
+
+    /**
+     * Checks whether the feature value is in the matrix (including
+     * implicit defaults) using the matrix's mask
+     */
+    internal fun Matrix.hasSimpleValue(value: SimpleValue): Boolean =
+        with(featureIndex) {
+            val bit = bitOf(value)
+            if (bit == null) value in simpleValues else bit in simpleMask(featureIndex)
+        }
+
     fun UndeclaredSymbolValue.toUndeclaredSymbol(): Symbol = name.toUndeclaredSymbol()
 
     fun SimpleValue.toFeature(): Feature =
@@ -444,20 +585,80 @@ class Declarations(
     }
 }
 
-expect class Cache<K, V>() : MutableMap<K, V>
+/**
+ * The number of entries each of a ``Declarations``' caches holds by default
+ */
+const val DEFAULT_CACHE_SIZE: Int = 50_000
+
+/**
+ * A memoization cache holding at most ``maxSize`` entries. Once it's
+ * full, adding an entry evicts another one (the JVM cache picks entries
+ * that are unlikely to be used again, the JS cache the least recently used).
+ * Caches can safely be used from several threads at once.
+ */
+expect class Cache<K : Any, V : Any>(maxSize: Int = DEFAULT_CACHE_SIZE) {
+    val maxSize: Int
+
+    operator fun get(key: K): V?
+
+    operator fun set(key: K, value: V)
+
+    fun getOrPut(key: K, defaultValue: () -> V): V
+
+    /**
+     * The hits, misses and evictions since the cache was created
+     * (or its statistics were last reset)
+     */
+    val stats: CacheStats
+
+    fun resetStats()
+
+    fun clear()
+}
+
+/**
+ * @param size The number of entries in the cache right now
+ */
+data class CacheStats(
+    val hits: Long,
+    val misses: Long,
+    val evictions: Long,
+    val size: Int,
+) {
+    val hitRate: Double
+        get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+    operator fun plus(other: CacheStats): CacheStats = CacheStats(
+        hits + other.hits,
+        misses + other.misses,
+        evictions + other.evictions,
+        size + other.size,
+    )
+
+    companion object {
+        val ZERO: CacheStats = CacheStats(0, 0, 0, 0)
+    }
+}
 
 data class SegmentClass(val name: String, val sounds: List<String>)
 
 class Feature(
     val name: String,
     val values: List<SimpleValue>,
-    explicitDefault: SimpleValue? = null,
+    val explicitDefault: SimpleValue? = null,
     val level: WordLevel = WordLevel.SEGMENT,
 ) {
     val absent: SimpleValue = SimpleValue.absent(name)
     val default: SimpleValue = explicitDefault ?: absent
     val allValues: List<SimpleValue> = listOf(absent) + listOfNotNull(explicitDefault) + values
 
+    /**
+     * Describes this feature for checkpoint fingerprints,
+     * including the parts ``toString`` leaves out
+     */
+    val fingerprint: String
+        get() = "$level $name(${explicitDefault?.let { "*${it.name} " } ?: ""}${values.joinToString { it.name }})"
+
     override fun toString(): String = values.joinToString(prefix = "$name(", postfix = ")")
 }
 
@@ -0,0 +1,90 @@
+package com.meamoria.lexurgy.sc
+
+/**
+ * Controls how a sound changer spreads a batch of words between threads.
+ *
+ * @param threads The number of threads to use; null to use one per
+ * available processor. A single thread runs everything on the calling thread.
+ * @param minChunkSize The smallest number of words to hand to a worker at once
+ * @param maxChunkSize The largest number of words to hand to a worker at once
+ * @param sequentialCutoff Batches of at most this many words are always
+ * changed on the calling thread, since splitting them up costs more than it saves
+ * @param executor Runs the chunks of each batch; null to use the platform's
+ * default pool (with the specified number of threads, if provided)
+ */
+class ExecutionPolicy(
+    val threads: Int? = null,
+    val minChunkSize: Int = 64,
+    val maxChunkSize: Int = 4096,
+    val sequentialCutoff: Int = 256,
+    val executor: TaskExecutor? = null,
+) {
+    init {
+        require(threads == null || threads > 0) { "The number of threads must be positive" }
+        require(minChunkSize > 0) { "The minimum chunk size must be positive" }
+        require(maxChunkSize >= minChunkSize) {
+            "The maximum chunk size can't be less than the minimum chunk size"
+        }
+        require(sequentialCutoff >= 0) { "The sequential cut-off can't be negative" }
+    }
+
+    /**
+     * True if batches of the specified size should be changed
+     * on the calling thread
+     */
+    fun isSequential(batchSize: Int): Boolean =
+        threads == 1 || batchSize <= sequentialCutoff
+
+    /**
+     * The number of words to put in each chunk of a batch
+     * of the specified size, given the number of available workers.
+     * Aims for a few chunks per worker so that uneven chunks
+     * balance out.
+     */
+    fun chunkSize(batchSize: Int, workers: Int): Int {
+        val chunksPerWorker = 4
+        val target = (batchSize + workers * chunksPerWorker - 1) / (workers * chunksPerWorker)
+        return target.coerceIn(minChunkSize, maxChunkSize)
+    }
+
+    fun copy(
+        threads: Int? = this.threads,
+        minChunkSize: Int = this.minChunkSize,
+        maxChunkSize: Int = this.maxChunkSize,
+        sequentialCutoff: Int = this.sequentialCutoff,
+        executor: TaskExecutor? = this.executor,
+    ): ExecutionPolicy = ExecutionPolicy(threads, minChunkSize, maxChunkSize, sequentialCutoff, executor)
+
+    override fun toString(): String =
+        "ExecutionPolicy(threads=$threads, minChunkSize=$minChunkSize, maxChunkSize=$maxChunkSize, " +
+                "sequentialCutoff=$sequentialCutoff, executor=$executor)"
+
+    companion object {
+        val DEFAULT: ExecutionPolicy = ExecutionPolicy()
+
+        val SEQUENTIAL: ExecutionPolicy = ExecutionPolicy(threads = 1)
+
+        /**
+         * A policy that always hands out chunks of exactly the specified size
+         */
+        fun withChunkSize(chunkSize: Int, threads: Int? = null): ExecutionPolicy =
+            ExecutionPolicy(
+                threads = threads,
+                minChunkSize = chunkSize,
+                maxChunkSize = chunkSize,
+                sequentialCutoff = minOf(chunkSize, DEFAULT.sequentialCutoff),
+            )
+    }
+}
+
+/**
+ * Something that can run a set of independent tasks, possibly
+ * in parallel, returning once they have all finished.
+ */
+fun interface TaskExecutor {
+    /**
+     * Runs all the tasks, rethrowing the first exception
+     * thrown by any of them
+     */
+    fun executeAll(tasks: List<() -> Unit>)
+}
@@ -0,0 +1,246 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.sc.element.*
+import com.meamoria.lexurgy.word.PackedSegments
+import com.meamoria.lexurgy.word.Phrase
+import com.meamoria.lexurgy.word.PhraseIndex
+import com.meamoria.lexurgy.word.Segment
+import com.meamoria.lexurgy.word.NO_SEGMENT_ID
+import com.meamoria.lexurgy.word.SegmentInterner
+
+/**
+ * Matches all the expressions of a simultaneous rule in a single pass
+ * over the phrase. The expressions are indexed by the segments their
+ * matches can start with, so at each index only the expressions that
+ * could start with the segment there get tried.
+ *
+ * The claims come out in the same order as calling ``claimAll`` on
+ * each expression in turn, and if several expressions fail with an
+ * error, the error is the one ``claimAll`` would have thrown first.
+ */
+internal class ExpressionIndex(
+    private val interner: SegmentInterner,
+    private val expressions: List<RuleExpression>,
+) {
+    private val firstSegments = expressions.map { FirstSegment.of(it.matcher) }
+
+    // Expressions that can match without starting with a segment,
+    // which have to be tried everywhere (including the ends of words)
+    private val anywhere = expressions.indices.filter { firstSegments[it] == FirstSegment.Anywhere }.toIntArray()
+
+    /**
+     * The candidates for the first ``count`` ids. The array is
+     * grown geometrically and shared with the next ``Checked``,
+     * which only fills in the slots past ``count``.
+     */
+    private class Checked(val count: Int, val candidates: Array<IntArray?>)
+
+    // Replaced rather than mutated, just like SegmentGuard.Requires
+    private var checked = Checked(0, emptyArray())
+
+    fun claimAll(phrase: Phrase, stats: MatchStats? = null): List<TransformationCatching> {
+        val claims = List(expressions.size) { mutableListOf<TransformationCatching>() }
+        val errors = arrayOfNulls<Exception>(expressions.size)
+        for ((wordIndex, word) in phrase.words.withIndex()) {
+            val ids = PackedSegments.idsOf(word.segments, interner)
+            val matchStarts = arrayOfNulls<BooleanArray>(expressions.size)
+            for (segmentIndex in 0..ids.size) {
+                val candidates = when {
+                    segmentIndex == ids.size -> anywhere
+                    ids[segmentIndex] == NO_SEGMENT_ID -> candidatesFor(word.segments[segmentIndex])
+                    else -> candidatesFor(ids[segmentIndex])
+                }
+                for (i in candidates) {
+                    // An expression stops at its first error, as it would in claimAll
+                    if (errors[i] != null) continue
+                    val expression = expressions[i]
+                    val starts = matchStarts[i] ?: expression.matchStarts(word)?.also { matchStarts[i] = it }
+                    if (starts?.get(segmentIndex) == false) continue
+                    try {
+                        expression.claimAt(i, phrase, PhraseIndex(wordIndex, segmentIndex), stats)?.let { claims[i] += it }
+                    } catch (e: Exception) {
+                        errors[i] = e
+                    }
+                }
+            }
+        }
+        errors.firstOrNull { it != null }?.let { throw it }
+        return claims.flatten()
+    }
+
+    /**
+     * The expressions to try at an index with the specified segment, in order
+     */
+    private fun candidatesFor(id: Int): IntArray {
+        var current = checked
+        if (id >= current.count) {
+            current = checkNewSegments(current)
+            checked = current
+        }
+        return current.candidates[id]!!
+    }
+
+    private fun candidatesFor(segment: Segment): IntArray =
+        expressions.indices.filter { i ->
+            when (val first = firstSegments[i]) {
+                FirstSegment.Anywhere -> true
+                is FirstSegment.Segments -> first.passes(segment)
+            }
+        }.toIntArray()
+
+    private fun checkNewSegments(previous: Checked): Checked {
+        val count = interner.size
+        val candidates = if (count <= previous.candidates.size) previous.candidates
+        else previous.candidates.copyOf(maxOf(count, previous.candidates.size * 2))
+        for (id in previous.count until count) {
+            candidates[id] = candidatesFor(interner.segment(id))
+        }
+        return Checked(count, candidates)
+    }
+}
+
+/**
+ * What the segment at the start of a match has to be like
+ */
+internal sealed class FirstSegment {
+    /**
+     * The matcher might match without starting with a segment, or might fail
+     * with an error before it gets to one, or just isn't understood
+     */
+    object Anywhere : FirstSegment()
+
+    /**
+     * Every match (and every error) starts at a segment that passes ``test``
+     */
+    class Segments(private val test: (Segment) -> Boolean) : FirstSegment() {
+        // A segment that makes the test fail with an error is let through,
+        // so that the rule itself gets to report the error
+        fun passes(segment: Segment): Boolean =
+            try {
+                test(segment)
+            } catch (e: Exception) {
+                true
+            }
+    }
+
+    companion object {
+        fun of(matcher: Matcher): FirstSegment {
+            val analysis = analyze(matcher)
+            return if (analysis.test == null || analysis.nullable) Anywhere else Segments(analysis.test)
+        }
+
+        /**
+         * @param test Passes every segment a match can start with,
+         * or null if nothing's known about the first segment
+         * @param nullable Whether the matcher can also match (or fail to match)
+         * without consuming anything, passing the first segment on to what follows
+         */
+        private class Analysis(val test: ((Segment) -> Boolean)?, val nullable: Boolean)
+
+        private val unknown = Analysis(null, true)
+
+        private val zeroWidth = Analysis({ false }, true)
+
+        private val anySegment = Analysis({ true }, false)
+
+        private fun analyze(matcher: Matcher): Analysis = when (matcher) {
+            is SymbolMatcher -> matcher.text.segments.firstOrNull()?.let { textSegment ->
+                Analysis({ with(matcher.declarations) { it.matches(textSegment) } }, false)
+            } ?: zeroWidth
+
+            is MatrixMatcher -> {
+                // Variables depend on the bindings, so they can't be checked in advance
+                val fixedMatrix = Matrix(matcher.matrix.valueList.filter { it !is FeatureVariable })
+                Analysis({ with(matcher.declarations) { it.matches(fixedMatrix, Bindings.EMPTY) != null } }, false)
+            }
+
+            is ClassMatcher -> alternatives(matcher.elements)
+            is AlternativeMatcher -> alternatives(matcher.elements)
+            is SequenceMatcher -> sequence(matcher.elements)
+
+            is RepeaterMatcher -> {
+                val element = analyze(matcher.element)
+                if (matcher.type.minReps == 0) Analysis(element.test, true) else element
+            }
+
+            is CaptureMatcher -> analyze(matcher.element)
+            is EnvironmentMatcher -> analyze(matcher.element)
+            is IntersectionMatcher -> analyze(matcher.initialMatcher)
+
+            is NegatedMatcher -> {
+                // Negating something that isn't a single segment fails wherever it's tried
+                val negatesOneSegment = try {
+                    matcher.matcher.length(Bindings.EMPTY) == 1
+                } catch (e: Exception) {
+                    false
+                }
+                if (negatesOneSegment) anySegment else unknown
+            }
+
+            is SyllableMatrixMatcher -> anySegment
+            is NeverMatcher -> Analysis({ false }, false)
+            EmptyMatcher, WordStartMatcher, WordEndMatcher -> zeroWidth
+            else -> unknown
+        }
+
+        private fun alternatives(elements: List<Matcher>): Analysis {
+            val analyses = elements.map { analyze(it) }
+            val tests = analyses.map { it.test ?: return unknown }
+            return Analysis({ segment -> tests.any { it(segment) } }, analyses.any { it.nullable })
+        }
+
+        private fun sequence(elements: List<Matcher>): Analysis {
+            val tests = mutableListOf<(Segment) -> Boolean>()
+            for (element in elements) {
+                val analysis = analyze(element)
+                tests += analysis.test ?: return unknown
+                if (!analysis.nullable) return Analysis({ segment -> tests.any { it(segment) } }, false)
+            }
+            return Analysis({ segment -> tests.any { it(segment) } }, true)
+        }
+    }
+}
+
+/**
+ * How far from the index where an expression starts matching it can look.
+ * Both distances include one extra segment, since word edges are found by
+ * whether there's a segment just outside the match and its environment.
+ */
+internal class Reach(val before: Int, val after: Int) {
+    companion object {
+        /**
+         * The reach of an expression with the specified matcher, or null
+         * if the matcher doesn't always match the same number of segments
+         * (or isn't understood)
+         */
+        fun of(matcher: Matcher): Reach? {
+            if (matcher !is EnvironmentMatcher) return fixedLength(matcher)?.let { Reach(1, it + 1) }
+            val length = fixedLength(matcher.element) ?: return null
+            val environments = matcher.environment.positive + matcher.environment.negative
+            var before = 0
+            var after = 0
+            for (environment in environments) {
+                before = maxOf(before, fixedLength(environment.before) ?: return null)
+                after = maxOf(after, fixedLength(environment.after) ?: return null)
+            }
+            return Reach(before + 1, length + after + 1)
+        }
+
+        private fun fixedLength(matcher: Matcher): Int? = when (matcher) {
+            is AbstractTextMatcher -> matcher.text.length
+            is MatrixMatcher -> 1
+            is ClassMatcher -> uniformLength(matcher.elements)
+            is AlternativeMatcher -> uniformLength(matcher.elements)
+            is SequenceMatcher -> matcher.elements.sumOf { fixedLength(it) ?: return null }
+            is CaptureMatcher -> fixedLength(matcher.element)
+            is NegatedMatcher -> if (fixedLength(matcher.matcher) == 1) 1 else null
+            EmptyMatcher, WordStartMatcher, WordEndMatcher -> 0
+            else -> null
+        }
+
+        private fun uniformLength(elements: List<Matcher>): Int? {
+            val lengths = elements.map { fixedLength(it) ?: return null }
+            return lengths.distinct().singleOrNull()
+        }
+    }
+}
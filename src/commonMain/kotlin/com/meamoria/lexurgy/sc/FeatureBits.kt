@@ -0,0 +1,104 @@
+package com.meamoria.lexurgy.sc
+
+/**
+ * Numbers every value of every feature, so that a set of feature
+ * values can be stored as a bit mask (a ``LongArray`` with one bit
+ * per value). Matching, updating and comparing matrices then come
+ * down to a few bitwise operations.
+ */
+internal class FeatureIndex(val features: List<Feature>) {
+    private val valueToBit: Map<SimpleValue, Int> = features.flatMap { it.allValues }
+        .withIndex().associate { it.value to it.index }
+
+    /**
+     * The number of longs in each mask
+     */
+    val width: Int = (valueToBit.size + 63) ushr 6
+
+    // Every value of the feature each value belongs to
+    private val featureMaskOfBit: List<LongArray> = features.flatMap { feature ->
+        val mask = maskOf(feature.allValues)
+        feature.allValues.map { mask }
+    }
+
+    private val defaultMask: LongArray = maskOf(features.map { it.default })
+
+    fun bitOf(value: SimpleValue): Int? = valueToBit[value]
+
+    fun maskOf(values: Iterable<SimpleValue>): LongArray {
+        val mask = LongArray(width)
+        for (value in values) bitOf(value)?.let { mask.setBit(it) }
+        return mask
+    }
+
+    /**
+     * The mask of every value of every feature the specified values belong to
+     */
+    fun featureMaskOf(values: Iterable<SimpleValue>): LongArray {
+        val mask = LongArray(width)
+        for (value in values) bitOf(value)?.let { mask.orWith(featureMaskOfBit[it]) }
+        return mask
+    }
+
+    /**
+     * The mask of a matrix's feature values, including the implicit
+     * defaults for the features the matrix doesn't mention
+     */
+    fun simpleMaskOf(matrix: Matrix): LongArray {
+        val explicit = LongArray(width)
+        val explicitFeatures = LongArray(width)
+        for (value in matrix.valueList) {
+            if (value !is SimpleValue) continue
+            val bit = bitOf(value) ?: continue
+            explicit.setBit(bit)
+            explicitFeatures.orWith(featureMaskOfBit[bit])
+        }
+        for (i in 0 until width) {
+            explicit[i] = explicit[i] or (defaultMask[i] and explicitFeatures[i].inv())
+        }
+        return explicit
+    }
+
+    fun LongArray.setBit(bit: Int) {
+        this[bit ushr 6] = this[bit ushr 6] or (1L shl bit)
+    }
+
+    operator fun LongArray.contains(bit: Int): Boolean = this[bit ushr 6] and (1L shl bit) != 0L
+
+    private fun LongArray.orWith(other: LongArray) {
+        for (i in indices) this[i] = this[i] or other[i]
+    }
+
+    fun LongArray.containsAll(other: LongArray): Boolean {
+        for (i in indices) if (other[i] and this[i] != other[i]) return false
+        return true
+    }
+
+    fun LongArray.intersects(other: LongArray): Boolean {
+        for (i in indices) if (other[i] and this[i] != 0L) return true
+        return false
+    }
+
+    /**
+     * The number of values in one mask but not the other
+     */
+    fun LongArray.distanceTo(other: LongArray): Int {
+        var result = 0
+        for (i in indices) result += (this[i] xor other[i]).countOneBits()
+        return result
+    }
+}
+
+/**
+ * A matrix used as a pattern, split into the values that can be checked
+ * against a mask and the ones (such as feature variables) that can't.
+ *
+ * @param required The values a matching matrix must have
+ * @param forbidden The values a matching matrix mustn't have
+ * @param others The values that have to be checked one at a time
+ */
+internal class CompiledPattern(
+    val required: LongArray,
+    val forbidden: LongArray,
+    val others: List<MatrixValue>,
+)
@@ -7,6 +7,24 @@ class Matrix(val valueList: List<MatrixValue>) {
     private val valueSet = valueList.toSet()
     private val hashCode = valueSet.hashCode()
 
+    // Matrices are almost always used with a single set of features,
+    // so remembering the masks for the last set is enough
+    private var simpleMaskCache: Pair<List<Feature>, LongArray>? = null
+    private var patternCache: Pair<List<Feature>, CompiledPattern>? = null
+
+    /**
+     * This matrix's feature values (including implicit defaults) as a mask
+     */
+    internal fun simpleMask(index: FeatureIndex): LongArray {
+        simpleMaskCache?.let { (features, mask) -> if (features === index.features) return mask }
+        return index.simpleMaskOf(this).also { simpleMaskCache = index.features to it }
+    }
+
+    internal fun compiledPattern(index: FeatureIndex, compile: () -> CompiledPattern): CompiledPattern {
+        patternCache?.let { (features, pattern) -> if (features === index.features) return pattern }
+        return compile().also { patternCache = index.features to it }
+    }
+
     /**
      * Returns this matrix's explicit feature values.
      */
@@ -14,17 +32,19 @@ class Matrix(val valueList: List<MatrixValue>) {
         get() = valueList.filterIsInstance<SimpleValue>()
 
     fun bindVariables(bindings: Bindings): Matrix {
-        var updated = false
-        val values = valueList.toMutableList()
-        for ((feature, value) in bindings.features) {
-            val index = values.indexOfFirst { it is FeatureVariable && it.featureName == feature.name }
+        // Only copied once a variable turns out to be bound
+        var values: MutableList<MatrixValue>? = null
+        for (i in 0 until bindings.featureCount) {
+            val feature = bindings.boundFeature(i)
+            val current = values ?: valueList
+            val index = current.indexOfFirst { it is FeatureVariable && it.featureName == feature.name }
             if (index >= 0) {
-                values.removeAt(index)
-                values.add(value)
-                updated = true
+                val updated = values ?: valueList.toMutableList().also { values = it }
+                updated.removeAt(index)
+                updated.add(bindings.boundValue(i))
             }
         }
-        return if (updated) Matrix(values) else this
+        return values?.let { Matrix(it) } ?: this
     }
 
     /**
@@ -68,7 +88,7 @@ data class NegatedValue(val value: String) : MatrixValue {
 
     override fun matchesNonBinding(declarations: Declarations, matrix: Matrix, bindings: Bindings): Boolean =
         with(declarations) {
-            value.toSimpleValue() !in matrix.simpleValues
+            !matrix.hasSimpleValue(value.toSimpleValue())
         }
 
     override fun toString(): String = "!$value"
@@ -83,8 +103,8 @@ data class FeatureVariable(val featureName: String) : MatrixValue {
     override fun matches(declarations: Declarations, matrix: Matrix, bindings: Bindings): Bindings? {
         with(declarations) {
             val featureObject = featureName.toFeature()
-            val match = featureObject.allValues.filter { it in matrix.fullValueSet }
-            return match.firstOrNull()?.let {
+            val match = featureObject.allValues.firstOrNull { matrix.hasSimpleValue(it) }
+            return match?.let {
                 bindings.bindFeature(featureObject, it)
             }
         }
@@ -101,7 +121,7 @@ data class SimpleValue(val name: String) : MatrixValue {
 
     override fun matchesNonBinding(declarations: Declarations, matrix: Matrix, bindings: Bindings): Boolean =
         with(declarations) {
-            name.toSimpleValue() in matrix.simpleValues
+            matrix.hasSimpleValue(name.toSimpleValue())
         }
 
     override fun toString(): String = name
@@ -1534,7 +1534,7 @@ object LscWalker : LscBaseVisitor<AstNode>() {
 
     data class InheritedRuleProperties(
         val name: String?,
-        val filter: ((Segment) -> Boolean)?,
+        val filter: SegmentFilter?,
     ) {
         companion object {
             val none: InheritedRuleProperties =
@@ -1732,21 +1732,21 @@ object LscWalker : LscBaseVisitor<AstNode>() {
             declarations: ParseTimeDeclarations,
             inherited: InheritedRuleProperties
         ): ChangeRule {
-            val filter = if (ruleFilter != null || inherited.filter != null) {
-                val thisFilter = ruleFilter?.let { filter ->
-                    { segment: Segment ->
-                        filter.matcher(ElementContext.aloneInMain(), declarations).claim(
-                            Phrase(StandardWord.single(segment)),
-                            PhraseIndex(0, 0),
-                            Bindings(),
-                        ).any { it.index.segmentIndex == 1 }
-                    }
-                } ?: { true }
-                val inheritedFilter = inherited.filter ?: { true }
-                { segment: Segment ->
-                    thisFilter(segment) && inheritedFilter(segment)
+            val thisFilter = ruleFilter?.let { filter ->
+                val matcher = filter.matcher(ElementContext.aloneInMain(), declarations)
+                SegmentFilter("$matcher") { segment ->
+                    matcher.claim(
+                        Phrase(StandardWord.single(segment)),
+                        PhraseIndex(0, 0),
+                        Bindings.EMPTY,
+                    ).any { it.index.segmentIndex == 1 }
                 }
-            } else null
+            }
+            val filter = when {
+                thisFilter == null -> inherited.filter
+                inherited.filter == null -> thisFilter
+                else -> thisFilter and inherited.filter
+            }
 
             val subRule = linkSubRules(
                 firstExpressionNumber,
@@ -1869,6 +1869,7 @@ object LscWalker : LscBaseVisitor<AstNode>() {
             } ?: coreMatcher
             RuleExpression(
                 declarations.runtime,
+                matcher,
                 matcher.transformerTo(
                     castToResultElement(result).emitter(declarations),
                     filtered,
@@ -0,0 +1,148 @@
+package com.meamoria.lexurgy.sc
+
+import kotlin.jvm.Synchronized
+
+/**
+ * Collects timings and matching statistics for each step a sound
+ * changer runs. Attach one to a sound changer with `withProfiler`;
+ * it accumulates statistics over every run until it's reset.
+ *
+ * Matching work is only counted while a profiler is attached, and
+ * it's counted in the profiler's own entries, so sound changers that
+ * share rules (or a profiler) can run at the same time.
+ */
+class Profiler {
+    private val entries = mutableMapOf<Pair<StepKind, String>, Entry>()
+
+    /**
+     * Gets ready to profile the specified steps, returning the
+     * entry to record each step's statistics in. The entries can
+     * safely be updated from several threads at once.
+     */
+    @Synchronized
+    internal fun prepare(steps: List<Pair<StepKind, String>>): List<Entry> =
+        steps.map { step -> entries.getOrPut(step) { Entry(step.first, step.second) } }
+
+    /**
+     * A summary of everything recorded so far, slowest steps first
+     */
+    @Synchronized
+    fun profile(): Profile = Profile(
+        entries.values.map { it.toStepProfile() }.sortedByDescending { it.nanos }
+    )
+
+    @Synchronized
+    fun reset() {
+        entries.clear()
+    }
+
+    internal class Entry(val kind: StepKind, val name: String) {
+        val nanos = ConcurrentCounter()
+        val runs = ConcurrentCounter()
+        val wordsChanged = ConcurrentCounter()
+
+        /**
+         * Passed to the step's rule, which counts its matching work here
+         */
+        val matchStats = MatchStats()
+
+        fun record(nanos: Long, wordsChanged: Long) {
+            runs.increment()
+            this.nanos.add(nanos)
+            this.wordsChanged.add(wordsChanged)
+        }
+
+        fun toStepProfile(): StepProfile = StepProfile(
+            kind, name, nanos.total, runs.total, wordsChanged.total,
+            matchStats.claimAttempts.total, matchStats.claims.total, matchStats.transformations.total,
+        )
+    }
+}
+
+enum class StepKind(val string: String) {
+    RULE("rule"),
+    INTERMEDIATE_ROMANIZER("intermediate romanizer"),
+    SYLLABIFICATION("syllabification"),
+}
+
+/**
+ * The statistics for one step (or all the steps with the same name,
+ * such as persistent syllabification passes and cleanup rules)
+ *
+ * @param nanos The total time spent on the step, in nanoseconds
+ * @param runs The number of times the step was applied to a batch of words
+ * (in word-major mode, to a single word)
+ * @param wordsChanged The number of times the step changed a word
+ * @param claimAttempts The number of times an expression tried to match
+ * @param claims The number of times an expression matched
+ * @param transformations The number of transformations applied to words
+ */
+data class StepProfile(
+    val kind: StepKind,
+    val name: String,
+    val nanos: Long,
+    val runs: Long,
+    val wordsChanged: Long,
+    val claimAttempts: Long,
+    val claims: Long,
+    val transformations: Long,
+)
+
+class Profile(val steps: List<StepProfile>) {
+    val totalNanos: Long = steps.sumOf { it.nanos }
+
+    /**
+     * A human-readable table of the steps, slowest first
+     */
+    fun report(): String {
+        val header = listOf("Time", "%", "Step", "Words changed", "Claim attempts", "Claims", "Transformations")
+        val rows = steps.map {
+            listOf(
+                formatMillis(it.nanos),
+                formatPercent(it.nanos),
+                "${it.kind.string} ${it.name}",
+                it.wordsChanged.toString(),
+                it.claimAttempts.toString(),
+                it.claims.toString(),
+                it.transformations.toString(),
+            )
+        }
+        val widths = header.indices.map { column -> (rows + listOf(header)).maxOf { it[column].length } }
+        return (listOf(header) + rows).joinToString("\n") { row ->
+            row.zip(widths) { cell, width -> cell.padEnd(width) }.joinToString("  ").trimEnd()
+        } + "\nTotal: ${formatMillis(totalNanos)}"
+    }
+
+    private fun formatMillis(nanos: Long): String =
+        "${nanos / 1_000_000}.${(nanos / 1000 % 1000).toString().padStart(3, '0')} ms"
+
+    private fun formatPercent(nanos: Long): String =
+        if (totalNanos == 0L) "0.0" else {
+            val permille = nanos * 1000 / totalNanos
+            "${permille / 10}.${permille % 10}"
+        }
+}
+
+/**
+ * Counts the matching work done while applying a rule. Rules only
+ * count into one of these when it's passed to them, so there's no
+ * counting at all when nothing is being profiled.
+ */
+class MatchStats {
+    val claimAttempts = ConcurrentCounter()
+    val claims = ConcurrentCounter()
+    val transformations = ConcurrentCounter()
+}
+
+/**
+ * A counter that can be incremented from several threads at once
+ */
+expect class ConcurrentCounter() {
+    fun add(amount: Long)
+
+    fun increment()
+
+    fun reset()
+
+    val total: Long
+}
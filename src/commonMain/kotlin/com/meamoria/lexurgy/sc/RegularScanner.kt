@@ -0,0 +1,400 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.sc.element.*
+import com.meamoria.lexurgy.word.NO_SEGMENT_ID
+import com.meamoria.lexurgy.word.PackedSegments
+import com.meamoria.lexurgy.word.Segment
+import com.meamoria.lexurgy.word.SegmentInterner
+import com.meamoria.lexurgy.word.Word
+
+/**
+ * Finds every place in a word where a rule expression could start
+ * matching, in two linear passes over the word rather than by
+ * running the expression's matcher at every index.
+ *
+ * Only expressions that are regular can be scanned: literal symbols,
+ * classes, feature matrices without variables, single-segment negations,
+ * word edges and bounded repeaters, optionally with environments made
+ * of the same. Anything else (captures, variables, intersections,
+ * syllable structure, etc.) doesn't get a scanner, and the expression
+ * falls back to trying every index.
+ *
+ * Like ``SegmentGuard``, a scanner errs on the side of admitting
+ * positions: negative environments are ignored, and so are positive
+ * environments that aren't regular. So the expression still has to
+ * be matched properly at each position the scanner finds, but it
+ * can never match (or fail with an error) anywhere else.
+ */
+internal class RegularScanner private constructor(
+    private val interner: SegmentInterner,
+    private val before: Automaton?,
+    private val rest: Automaton,
+) {
+    /**
+     * Returns, for each index from 0 to the length of the word inclusive,
+     * whether the expression could start matching there.
+     */
+    fun matchStarts(word: Word): BooleanArray = matchStarts(PackedSegments.idsOf(word.segments, interner))
+
+    /**
+     * Like ``matchStarts(word)``, for a word given as the ids
+     * its segments have in this scanner's interner. A segment
+     * without an id is assumed to pass every test.
+     */
+    fun matchStarts(ids: IntArray): BooleanArray {
+        // The rest of the expression (the match and what follows it) is
+        // scanned backwards, so that it ends up at the start of each match
+        val restTags = rest.scan(ids, backwards = true)
+        val beforeTags = before?.scan(ids, backwards = false)
+        return BooleanArray(ids.size + 1) {
+            val tags = if (beforeTags == null) restTags[it] else restTags[it] and beforeTags[it]
+            tags != 0L
+        }
+    }
+
+    companion object {
+        // One bit per automaton state
+        private const val MAX_STATES = Long.SIZE_BITS
+
+        // LscTooManyOptions is thrown once a matcher has this many options
+        private const val MAX_ENDS = 1000
+
+        /**
+         * Compiles a scanner for a rule expression that matches using ``matcher``,
+         * or returns null if the matcher isn't regular.
+         */
+        fun forMatcher(interner: SegmentInterner, matcher: Matcher): RegularScanner? {
+            if (matcher !is EnvironmentMatcher) return compile(interner, matcher, emptyList())
+            val environments = matcher.environment.positive
+            if (environments.isNotEmpty()) {
+                compile(interner, matcher.element, environments)?.let { return it }
+            }
+            // Leaving out the environments only ever admits more
+            return compile(interner, matcher.element, emptyList())
+        }
+
+        /**
+         * Each environment gets its own tag, so that a position only passes
+         * if the part before it and the part after it come from the same environment.
+         */
+        private fun compile(
+            interner: SegmentInterner,
+            element: Matcher,
+            environments: List<Environment>,
+        ): RegularScanner? {
+            if (environments.isEmpty()) {
+                val rest = NfaBuilder(interner).build { builder ->
+                    listOf(builder.compile(element.reversed(), builder.accept(0)) ?: return null)
+                } ?: return null
+                return RegularScanner(interner, null, rest)
+            }
+            val rest = NfaBuilder(interner).build { builder ->
+                environments.mapIndexed { tag, environment ->
+                    val match = builder.compile(element.reversed(), builder.accept(tag)) ?: return null
+                    builder.compile(environment.after.reversed(), match) ?: return null
+                }
+            } ?: return null
+            val before = NfaBuilder(interner).build { builder ->
+                environments.mapIndexed { tag, environment ->
+                    builder.compile(environment.before, builder.accept(tag)) ?: return null
+                }
+            } ?: return null
+            return RegularScanner(interner, before, rest)
+        }
+    }
+
+    private sealed class Node {
+        class Split(val targets: List<Int>) : Node()
+
+        class Consume(val atom: Int, val target: Int) : Node()
+
+        class WordStart(val target: Int) : Node()
+
+        class WordEnd(val target: Int) : Node()
+
+        class Accept(val tag: Int) : Node()
+    }
+
+    /**
+     * Builds a Thompson automaton back to front: each matcher is
+     * compiled given the state to go to once it's matched.
+     */
+    private class NfaBuilder(val interner: SegmentInterner) {
+        private val nodes = mutableListOf<Node>()
+        private val atoms = mutableListOf<(Segment) -> Boolean>()
+
+        inline fun build(entries: (NfaBuilder) -> List<Int>): Automaton? {
+            val initial = add(Node.Split(entries(this)))
+            if (nodes.size > MAX_STATES) return null
+            return Automaton(interner, nodes, atoms, initial)
+        }
+
+        fun accept(tag: Int): Int = add(Node.Accept(tag))
+
+        fun compile(matcher: Matcher, next: Int): Int? {
+            val maxEnds = maxEnds(matcher)
+            if (maxEnds == null || maxEnds >= MAX_ENDS) return null
+            return compileElement(matcher, next)
+        }
+
+        private fun compileElement(matcher: Matcher, next: Int): Int? {
+            segmentTest(matcher)?.let { return add(Node.Consume(addAtom(it), next)) }
+            return when (matcher) {
+                is SymbolMatcher -> matcher.text.segments.asReversed().fold(next) { target, textSegment ->
+                    add(Node.Consume(addAtom { with(matcher.declarations) { it.matches(textSegment) } }, target))
+                }
+
+                is ClassMatcher -> add(Node.Split(matcher.elements.map { compileElement(it, next) ?: return null }))
+
+                is AlternativeMatcher ->
+                    add(Node.Split(matcher.elements.map { compileElement(it, next) ?: return null }))
+
+                is SequenceMatcher -> matcher.elements.asReversed().fold(next) { target, element ->
+                    compileElement(element, target) ?: return null
+                }
+
+                is RepeaterMatcher -> {
+                    val maxReps = matcher.type.maxReps ?: return null
+                    var target = next
+                    repeat(maxReps - matcher.type.minReps) {
+                        val repetition = compileElement(matcher.element, target) ?: return null
+                        target = add(Node.Split(listOf(repetition, next)))
+                    }
+                    repeat(matcher.type.minReps) {
+                        target = compileElement(matcher.element, target) ?: return null
+                    }
+                    target
+                }
+
+                EmptyMatcher -> next
+                WordStartMatcher -> add(Node.WordStart(next))
+                WordEndMatcher -> add(Node.WordEnd(next))
+                else -> null
+            }
+        }
+
+        /**
+         * A test for matchers that always match exactly one segment,
+         * which can be compiled into a single state
+         */
+        private fun segmentTest(matcher: Matcher): ((Segment) -> Boolean)? = when (matcher) {
+            is SymbolMatcher -> matcher.text.segments.singleOrNull()?.let { textSegment ->
+                { segment: Segment -> with(matcher.declarations) { segment.matches(textSegment) } }
+            }
+
+            is MatrixMatcher ->
+                if (matcher.matrix.valueList.any { it is FeatureVariable }) null else {
+                    { segment: Segment ->
+                        with(matcher.declarations) { segment.matches(matcher.matrix, Bindings.EMPTY) != null }
+                    }
+                }
+
+            is ClassMatcher -> anyTest(matcher.elements)
+            is AlternativeMatcher -> anyTest(matcher.elements)
+            is NegatedMatcher -> segmentTest(matcher.matcher)?.let { test -> { segment: Segment -> !test(segment) } }
+            else -> null
+        }
+
+        private fun anyTest(matchers: List<Matcher>): ((Segment) -> Boolean)? {
+            val tests = matchers.map { segmentTest(it) ?: return null }
+            return { segment -> tests.any { it(segment) } }
+        }
+
+        /**
+         * The most match ends the matcher can produce from one starting point,
+         * or null if there's no useful limit. Mirrors the limit ``SegmentGuard``
+         * uses to predict ``LscTooManyOptions``.
+         */
+        private fun maxEnds(matcher: Matcher): Int? = when (matcher) {
+            is ClassMatcher -> matcher.elements.size
+            is AlternativeMatcher -> sumOrNull(matcher.elements.map { maxEnds(it) })
+            is SequenceMatcher ->
+                matcher.elements.fold(1 as Int?) { acc, element -> productOrNull(acc, maxEnds(element)) }
+
+            is RepeaterMatcher -> matcher.type.maxReps?.let { maxReps ->
+                val elementEnds = maxEnds(matcher.element)
+                var repetitionEnds: Int? = 1
+                sumOrNull(
+                    (0..maxReps).map {
+                        repetitionEnds.also { repetitionEnds = productOrNull(repetitionEnds, elementEnds) }
+                    }
+                )
+            }
+
+            else -> 1
+        }
+
+        private fun sumOrNull(values: List<Int?>): Int? =
+            values.fold(0 as Int?) { acc, value -> acc?.let { value?.let { limit(acc.toLong() + it) } } }
+
+        private fun productOrNull(first: Int?, second: Int?): Int? =
+            first?.let { second?.let { limit(first.toLong() * it) } }
+
+        private fun limit(value: Long): Int? = value.takeIf { it < MAX_ENDS }?.toInt()
+
+        private fun add(node: Node): Int {
+            nodes += node
+            return nodes.lastIndex
+        }
+
+        private fun addAtom(test: (Segment) -> Boolean): Int {
+            atoms += test
+            return atoms.lastIndex
+        }
+    }
+
+    /**
+     * A Thompson automaton run as the equivalent deterministic automaton:
+     * each set of states is a single ``Long``, and the transitions
+     * between sets are worked out with a few bit operations.
+     */
+    private class Automaton(
+        private val interner: SegmentInterner,
+        nodes: List<Node>,
+        private val atoms: List<(Segment) -> Boolean>,
+        initial: Int,
+    ) {
+        private val initialState = 1L shl initial
+
+        private val consumeTargets = IntArray(nodes.size) { (nodes[it] as? Node.Consume)?.target ?: -1 }
+
+        // The consuming states that test each atom
+        private val atomStates = LongArray(atoms.size).also { states ->
+            nodes.forEachIndexed { i, node ->
+                if (node is Node.Consume) states[node.atom] = states[node.atom] or (1L shl i)
+            }
+        }
+
+        private val acceptTags = IntArray(nodes.size) { (nodes[it] as? Node.Accept)?.tag ?: -1 }
+
+        private val acceptStates = nodes.indices.fold(0L) { acc, i ->
+            if (nodes[i] is Node.Accept) acc or (1L shl i) else acc
+        }
+
+        // The states reachable from each state without consuming anything,
+        // for each combination of being at the start and/or end of the word
+        private val closures = Array(4) { context ->
+            val atStart = context and 1 != 0
+            val atEnd = context and 2 != 0
+            LongArray(nodes.size) { closureOf(nodes, it, atStart, atEnd) }
+        }
+
+        private fun closureOf(nodes: List<Node>, state: Int, atStart: Boolean, atEnd: Boolean): Long {
+            var result = 0L
+            val pending = mutableListOf(state)
+            while (pending.isNotEmpty()) {
+                val current = pending.removeLast()
+                if (result and (1L shl current) != 0L) continue
+                result = result or (1L shl current)
+                when (val node = nodes[current]) {
+                    is Node.Split -> pending += node.targets
+                    is Node.WordStart -> if (atStart) pending += node.target
+                    is Node.WordEnd -> if (atEnd) pending += node.target
+                    is Node.Consume, is Node.Accept -> Unit
+                }
+            }
+            return result
+        }
+
+        // Grown geometrically and shared between updates, like ExpressionIndex.Checked
+        private class Checked(val count: Int, val masks: LongArray)
+
+        // Replaced rather than mutated, just like SegmentGuard.Requires
+        private var checked = Checked(0, LongArray(0))
+
+        // A segment the interner had no room for might be accepted anywhere
+        private val allConsumingStates = atomStates.fold(0L) { acc, states -> acc or states }
+
+        /**
+         * The consuming states that accept the segment with the specified id
+         */
+        private fun statesAccepting(id: Int): Long {
+            if (id == NO_SEGMENT_ID) return allConsumingStates
+            var current = checked
+            if (id >= current.count) {
+                current = checkNewSegments(current)
+                checked = current
+            }
+            return current.masks[id]
+        }
+
+        private fun checkNewSegments(previous: Checked): Checked {
+            val count = interner.size
+            val masks = if (count <= previous.masks.size) previous.masks
+            else previous.masks.copyOf(maxOf(count, previous.masks.size * 2))
+            for (id in previous.count until count) {
+                val segment = interner.segment(id)
+                var mask = 0L
+                for (atom in atoms.indices) {
+                    if (passes(atom, segment)) mask = mask or atomStates[atom]
+                }
+                masks[id] = mask
+            }
+            return Checked(count, masks)
+        }
+
+        // A segment that makes a test fail with an error is let through,
+        // so that the rule itself gets to report the error
+        private fun passes(atom: Int, segment: Segment): Boolean =
+            try {
+                atoms[atom](segment)
+            } catch (e: Exception) {
+                true
+            }
+
+        /**
+         * Runs the automaton over the word from every starting point at once,
+         * returning the tags accepted at each index from 0 to the length
+         * of the word. Going backwards, a tag is accepted at an index if
+         * a match ends there when the word is read from the end.
+         */
+        fun scan(ids: IntArray, backwards: Boolean): LongArray {
+            val length = ids.size
+            val result = LongArray(length + 1)
+            var active = 0L
+            for (step in 0..length) {
+                val index = if (backwards) length - step else step
+                var next = initialState
+                if (step > 0) {
+                    val consumed = if (backwards) ids[index] else ids[index - 1]
+                    next = next or advance(active and statesAccepting(consumed))
+                }
+                active = closure(next, (if (step == 0) 1 else 0) or (if (step == length) 2 else 0))
+                result[index] = tagsIn(active)
+            }
+            return result
+        }
+
+        private fun advance(states: Long): Long {
+            var remaining = states
+            var result = 0L
+            while (remaining != 0L) {
+                val state = remaining.countTrailingZeroBits()
+                result = result or (1L shl consumeTargets[state])
+                remaining = remaining and (remaining - 1)
+            }
+            return result
+        }
+
+        private fun closure(states: Long, context: Int): Long {
+            val stateClosures = closures[context]
+            var remaining = states
+            var result = 0L
+            while (remaining != 0L) {
+                result = result or stateClosures[remaining.countTrailingZeroBits()]
+                remaining = remaining and (remaining - 1)
+            }
+            return result
+        }
+
+        private fun tagsIn(states: Long): Long {
+            var remaining = states and acceptStates
+            var result = 0L
+            while (remaining != 0L) {
+                result = result or (1L shl acceptTags[remaining.countTrailingZeroBits()])
+                remaining = remaining and (remaining - 1)
+            }
+            return result
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.sc.element.*
+import com.meamoria.lexurgy.word.Segment
+import com.meamoria.lexurgy.word.SegmentInterner
+import com.meamoria.lexurgy.word.SegmentInventory
+import com.meamoria.lexurgy.word.SegmentSet
+
+/**
+ * A conservative summary of the segments a phrase has to contain
+ * for a rule to match it.
+ *
+ * Guards err on the side of admitting phrases: if a guard rejects
+ * a phrase, the rule can't match anywhere in the phrase (or fail
+ * with an error while trying), so the rule can skip it without
+ * doing any matching work. A null guard admits everything.
+ */
+sealed class SegmentGuard {
+    abstract fun admits(inventory: SegmentInventory): Boolean
+
+    /**
+     * Requires at least one segment that passes ``test``.
+     * The result of the test is remembered for each segment id,
+     * so each distinct segment is only ever tested once. Phrases
+     * with segments the interner had no room for are always admitted.
+     */
+    class Requires(
+        val interner: SegmentInterner,
+        val description: String,
+        private val test: (Segment) -> Boolean,
+    ) : SegmentGuard() {
+        private class Checked(val count: Int, val passing: SegmentSet)
+
+        // Replaced wholesale rather than mutated, so threads racing to
+        // update it at worst test a few segments twice.
+        private var checked = Checked(0, SegmentSet.EMPTY)
+
+        override fun admits(inventory: SegmentInventory): Boolean {
+            val segments = inventory.segmentSet(interner) ?: return true
+            var current = checked
+            if (segments.end > current.count) {
+                current = checkNewSegments(current)
+                checked = current
+            }
+            return segments intersects current.passing
+        }
+
+        private fun checkNewSegments(previous: Checked): Checked {
+            val count = interner.size
+            val builder = SegmentSet.Builder()
+            for (id in previous.count until count) {
+                if (passes(interner.segment(id))) builder.add(id)
+            }
+            return Checked(count, previous.passing union builder.build())
+        }
+
+        // A segment that makes the test fail with an error is let through,
+        // so that the rule itself gets to report the error
+        private fun passes(segment: Segment): Boolean =
+            try {
+                test(segment)
+            } catch (e: Exception) {
+                true
+            }
+
+        infix fun or(other: Requires): Requires =
+            Requires(interner, "$description|${other.description}") { test(it) || other.test(it) }
+
+        override fun toString(): String = description
+    }
+
+    class AllOf(val guards: List<SegmentGuard>) : SegmentGuard() {
+        override fun admits(inventory: SegmentInventory): Boolean =
+            guards.all { it.admits(inventory) }
+
+        override fun toString(): String = guards.joinToString(" & ", prefix = "(", postfix = ")")
+    }
+
+    class AnyOf(val guards: List<SegmentGuard>) : SegmentGuard() {
+        override fun admits(inventory: SegmentInventory): Boolean =
+            guards.any { it.admits(inventory) }
+
+        override fun toString(): String = guards.joinToString(" | ", prefix = "(", postfix = ")")
+    }
+
+    /**
+     * Rejects everything; the guard of a rule that can never match
+     */
+    object Never : SegmentGuard() {
+        override fun admits(inventory: SegmentInventory): Boolean = false
+
+        override fun toString(): String = "never"
+    }
+
+    companion object {
+        /**
+         * A guard that admits only what all the specified guards admit.
+         * Null guards (which admit everything) are ignored.
+         */
+        fun allOf(guards: List<SegmentGuard?>): SegmentGuard? {
+            val realGuards = guards.filterNotNull().flatMap {
+                if (it is AllOf) it.guards else listOf(it)
+            }.distinct()
+            return when {
+                Never in realGuards -> Never
+                realGuards.isEmpty() -> null
+                realGuards.size == 1 -> realGuards.single()
+                else -> AllOf(realGuards)
+            }
+        }
+
+        fun allOf(vararg guards: SegmentGuard?): SegmentGuard? = allOf(guards.asList())
+
+        /**
+         * A guard that admits anything any of the specified guards admit.
+         * If any of the guards is null, so is the result.
+         */
+        fun anyOf(guards: List<SegmentGuard?>): SegmentGuard? {
+            if (null in guards) return null
+            val realGuards = guards.filterNotNull().flatMap {
+                if (it is AnyOf) it.guards else listOf(it)
+            }.filter { it != Never }.distinct()
+            // Alternatives that each need a single segment (e.g. the members of a class)
+            // are merged, so the whole lot costs a single bitset intersection
+            val (requires, others) = realGuards.partition { it is Requires }
+            val merged = requires.map { it as Requires }.groupBy { it.interner }.values.map {
+                it.reduce(Requires::or)
+            }
+            val result = merged + others
+            return when (result.size) {
+                0 -> Never
+                1 -> result.single()
+                else -> AnyOf(result)
+            }
+        }
+
+        fun anyOf(vararg guards: SegmentGuard?): SegmentGuard? = anyOf(guards.asList())
+
+        /**
+         * Derives a guard for a rule expression that matches using ``matcher``
+         */
+        fun forMatcher(matcher: Matcher): SegmentGuard? {
+            val analysis = GuardAnalysis(matcher).analyze(matcher)
+            return anyOf(analysis.matchGuard, analysis.errorGuard)
+        }
+    }
+}
+
+/**
+ * Works out what a matcher needs in order to match and what
+ * it needs in order to fail with an error.
+ *
+ * Matchers that this doesn't know about are assumed to be able
+ * to match (or fail) on anything.
+ */
+private class GuardAnalysis(root: Matcher) {
+    /**
+     * @param matchGuard Admits every phrase where the matcher can match
+     * @param errorGuard Admits every phrase where trying the matcher can throw an error
+     * @param maxEnds The most match ends the matcher can produce from one
+     * starting point, or null if there's no useful limit
+     */
+    class Result(val matchGuard: SegmentGuard?, val errorGuard: SegmentGuard?, val maxEnds: Int?)
+
+    // Capture numbers that are bound more than once, which
+    // can throw LscReboundCapture without matching anything
+    private val reboundCaptures: Set<Int> =
+        captureNumbers(root).groupingBy { it }.eachCount().filterValues { it > 1 }.keys
+
+    fun analyze(matcher: Matcher): Result = when (matcher) {
+        is SymbolMatcher -> Result(
+            SegmentGuard.allOf(
+                matcher.text.segments.map { textSegment ->
+                    SegmentGuard.Requires(matcher.declarations.segmentInterner, textSegment.string) {
+                        with(matcher.declarations) { it.matches(textSegment) }
+                    }
+                }
+            ),
+            SegmentGuard.Never,
+            1,
+        )
+
+        is MatrixMatcher -> {
+            // Variables depend on the bindings, so they can't be checked in advance
+            val fixedMatrix = Matrix(matcher.matrix.valueList.filter { it !is FeatureVariable })
+            Result(
+                if (fixedMatrix.valueList.isEmpty()) null else
+                    SegmentGuard.Requires(matcher.declarations.segmentInterner, matcher.matrix.toString()) {
+                        with(matcher.declarations) { it.matches(fixedMatrix, Bindings.EMPTY) != null }
+                    },
+                SegmentGuard.Never,
+                1,
+            )
+        }
+
+        is ClassMatcher -> Result(
+            SegmentGuard.anyOf(matcher.elements.map { analyze(it).matchGuard }),
+            SegmentGuard.Never,
+            matcher.elements.size,
+        )
+
+        is AlternativeMatcher -> {
+            val elements = matcher.elements.map { analyze(it) }
+            val matchGuard = SegmentGuard.anyOf(elements.map { it.matchGuard })
+            val maxEnds = sumOrNull(elements.map { it.maxEnds })
+            Result(
+                matchGuard,
+                SegmentGuard.anyOf(
+                    elements.map { it.errorGuard } + if (maxEnds == null) listOf(matchGuard) else emptyList()
+                ),
+                maxEnds,
+            )
+        }
+
+        is SequenceMatcher -> {
+            // Each element is only tried once everything before it has matched
+            var prefixGuard: SegmentGuard? = null
+            var maxEnds: Int? = 1
+            val errorGuards = mutableListOf<SegmentGuard?>()
+            for (element in matcher.elements.map { analyze(it) }) {
+                errorGuards += SegmentGuard.allOf(prefixGuard, element.errorGuard)
+                prefixGuard = SegmentGuard.allOf(prefixGuard, element.matchGuard)
+                maxEnds = productOrNull(maxEnds, element.maxEnds)
+                if (maxEnds == null) errorGuards += prefixGuard
+            }
+            Result(prefixGuard, SegmentGuard.anyOf(errorGuards), maxEnds)
+        }
+
+        is RepeaterMatcher -> {
+            val element = analyze(matcher.element)
+            val maxEnds = matcher.type.maxReps?.let { maxReps ->
+                // Each repetition can multiply the number of ends
+                var repetitionEnds: Int? = 1
+                sumOrNull(
+                    (0..maxReps).map {
+                        repetitionEnds.also { repetitionEnds = productOrNull(repetitionEnds, element.maxEnds) }
+                    }
+                )
+            }
+            Result(
+                element.matchGuard.takeIf { matcher.type.minReps > 0 },
+                if (maxEnds == null) {
+                    SegmentGuard.anyOf(element.errorGuard, element.matchGuard)
+                } else element.errorGuard,
+                maxEnds,
+            )
+        }
+
+        is CaptureMatcher -> {
+            val element = analyze(matcher.element)
+            Result(
+                element.matchGuard,
+                if (matcher.number in reboundCaptures) null else element.errorGuard,
+                element.maxEnds,
+            )
+        }
+
+        is IntersectionMatcher -> {
+            val initial = analyze(matcher.initialMatcher)
+            val verifiers = matcher.matchVerifiers.map { it to analyze(it.matcher) }
+            Result(
+                SegmentGuard.allOf(
+                    listOf(initial.matchGuard) +
+                            verifiers.filter { (verifier, _) -> !verifier.negated }.map { it.second.matchGuard }
+                ),
+                SegmentGuard.anyOf(listOf(initial.errorGuard) + verifiers.map { it.second.errorGuard }),
+                initial.maxEnds,
+            )
+        }
+
+        is EnvironmentMatcher -> {
+            val element = analyze(matcher.element)
+            val positive = matcher.environment.positive.map { analyzeEnvironment(it) }
+            val all = positive + matcher.environment.negative.map { analyzeEnvironment(it) }
+            Result(
+                SegmentGuard.allOf(
+                    element.matchGuard,
+                    if (positive.isEmpty()) null else SegmentGuard.anyOf(positive.map { it.matchGuard }),
+                ),
+                SegmentGuard.anyOf(
+                    element.errorGuard,
+                    SegmentGuard.allOf(element.matchGuard, SegmentGuard.anyOf(all.map { it.errorGuard })),
+                ),
+                element.maxEnds,
+            )
+        }
+
+        is NegatedMatcher -> {
+            // Negating something that isn't a single segment fails wherever it's tried
+            val negatesOneSegment = try {
+                matcher.matcher.length(Bindings.EMPTY) == 1
+            } catch (e: Exception) {
+                false
+            }
+            Result(null, if (negatesOneSegment) analyze(matcher.matcher).errorGuard else null, 1)
+        }
+
+        is NegatedLookaroundMatcher -> Result(null, analyze(matcher.matcher).errorGuard, 1)
+
+        is NeverMatcher -> Result(SegmentGuard.Never, SegmentGuard.Never, 0)
+
+        is TextMatcher, is SyllableMatrixMatcher, EmptyMatcher, WordStartMatcher, WordEndMatcher,
+        SyllableBoundaryMatcher, NegatedSyllableBoundaryMatcher, BetweenWordsMatcher, SyllableMatcher ->
+            Result(null, SegmentGuard.Never, 1)
+
+        else -> Result(null, null, null)
+    }
+
+    private fun analyzeEnvironment(environment: Environment): Result {
+        val before = analyze(environment.before)
+        val after = analyze(environment.after)
+        return Result(
+            SegmentGuard.allOf(before.matchGuard, after.matchGuard),
+            SegmentGuard.anyOf(before.errorGuard, SegmentGuard.allOf(before.matchGuard, after.errorGuard)),
+            null,
+        )
+    }
+
+    private fun captureNumbers(matcher: Matcher): List<Int> = when (matcher) {
+        is CaptureMatcher -> listOf(matcher.number) + captureNumbers(matcher.element)
+        is AlternativeMatcher -> matcher.elements.flatMap { captureNumbers(it) }
+        is SequenceMatcher -> matcher.elements.flatMap { captureNumbers(it) }
+        is RepeaterMatcher -> captureNumbers(matcher.element)
+        is IntersectionMatcher ->
+            captureNumbers(matcher.initialMatcher) + matcher.matchVerifiers.flatMap { captureNumbers(it.matcher) }
+
+        is EnvironmentMatcher -> captureNumbers(matcher.element) +
+                (matcher.environment.positive + matcher.environment.negative).flatMap {
+                    captureNumbers(it.before) + captureNumbers(it.after)
+                }
+
+        is NegatedMatcher -> captureNumbers(matcher.matcher)
+        is NegatedLookaroundMatcher -> captureNumbers(matcher.matcher)
+        else -> emptyList()
+    }
+
+    private fun sumOrNull(values: List<Int?>): Int? =
+        values.fold(0 as Int?) { acc, value -> acc?.let { value?.let { limit(acc.toLong() + it) } } }
+
+    private fun productOrNull(first: Int?, second: Int?): Int? =
+        first?.let { second?.let { limit(first.toLong() * it) } }
+
+    // LscTooManyOptions is thrown once a matcher has this many options
+    private fun limit(value: Long): Int? = value.takeIf { it < 1000 }?.toInt()
+}
@@ -2,10 +2,16 @@ package com.meamoria.lexurgy.sc
 
 import com.meamoria.lexurgy.*
 import com.meamoria.lexurgy.word.Phrase
+import com.meamoria.lexurgy.word.SegmentInventory
+import kotlin.time.ExperimentalTime
+import kotlin.time.measureTimedValue
 
 class SoundChanger(
     val initialDeclarations: Declarations,
     val rules: List<RuleWithAnchoredSteps>,
+    val executionMode: ExecutionMode = ExecutionMode.RULE_MAJOR,
+    val executionPolicy: ExecutionPolicy = ExecutionPolicy.DEFAULT,
+    val profiler: Profiler? = null,
 ) {
     init {
         val duplicated = rules.groupBy {
@@ -18,6 +24,50 @@ class SoundChanger(
 
     operator fun invoke(word: String): String = change(listOf(word)).single()
 
+    /**
+     * A copy of this sound changer that runs the same rules
+     * in the specified execution mode
+     */
+    fun withExecutionMode(executionMode: ExecutionMode): SoundChanger =
+        SoundChanger(initialDeclarations, rules, executionMode, executionPolicy, profiler)
+
+    /**
+     * A copy of this sound changer that runs the same rules,
+     * spreading the words between threads according to the specified policy
+     */
+    fun withExecutionPolicy(executionPolicy: ExecutionPolicy): SoundChanger =
+        SoundChanger(initialDeclarations, rules, executionMode, executionPolicy, profiler)
+
+    /**
+     * A copy of this sound changer that runs the same rules,
+     * recording statistics for each step in the specified profiler
+     */
+    fun withProfiler(profiler: Profiler?): SoundChanger =
+        SoundChanger(initialDeclarations, rules, executionMode, executionPolicy, profiler)
+
+    // Syllabification steps switch to copies of the declarations,
+    // each with its own caches
+    private val allDeclarations: List<Declarations> by lazy {
+        (listOf(initialDeclarations) + rules.flatMap { it.anchoredSteps }.mapNotNull {
+            (it as? SyllabificationStep)?.declarations
+        }).distinct()
+    }
+
+    /**
+     * The statistics for the caches of all the declarations the
+     * rules use, by cache name
+     */
+    val cacheStats: Map<String, CacheStats>
+        get() = allDeclarations.map { it.cacheStats }.fold(emptyMap()) { acc, stats ->
+            (acc.keys + stats.keys).associateWith {
+                (acc[it] ?: CacheStats.ZERO) + (stats[it] ?: CacheStats.ZERO)
+            }
+        }
+
+    fun resetCacheStats() {
+        allDeclarations.forEach { it.resetCacheStats() }
+    }
+
     /**
      * Run the sound changer on the specified words.
      *
@@ -105,7 +155,19 @@ class SoundChanger(
      * errors in `Result` objects like `changeWithIndividualErrors` AND
      * capturing intermediate stages like `changeWithIndermediates`.
      *
-     * Parameters are the same as `change`.
+     * If a checkpoint store is provided, the state of the words just
+     * before each rule in `checkpointAt` (and before `startAt`) is saved
+     * to the store. In that case `startAt` doesn't skip the earlier
+     * rules, and the results are the same as if all the rules were run.
+     * Instead, the changes pick up from the latest saved checkpoint that
+     * still matches the words and the rules before it, and only run the
+     * earlier rules if there isn't one. Intermediate romanizers before
+     * `startAt` are still ignored.
+     *
+     * @param checkpointStore Where to save and load checkpoints
+     * @param checkpointAt The names of the rules to save checkpoints before
+     *
+     * Other parameters are the same as `change`.
      */
     fun changeWithIntermediatesAndIndividualErrors(
         words: List<String>,
@@ -114,23 +176,282 @@ class SoundChanger(
         debugWords: List<String> = emptyList(),
         romanize: Boolean = true,
         debug: (String) -> Unit = ::println,
+        checkpointStore: CheckpointStore? = null,
+        checkpointAt: List<String> = emptyList(),
     ): Map<String?, List<Result<String>>> {
-        val tracer = words.withIndex()
-            .filter { it.value in debugWords }
-            .associate { it.index to it.value }
-            .let { Tracer(debug, it) }
-        val persistentEffects = PersistentEffects()
-        val startPhrases = words.map {
-            Phrase(
-                it.split(" ").map(
-                    initialDeclarations::parsePhonetic
+        val tracer = Tracer.forWords(debug, words, debugWords)
+        tracer.announce()
+
+        val result = mutableMapOf<String?, List<Result<String>>>()
+        val intermediateSink: (String, List<Result<String>>) -> Unit = { stage, stageWords ->
+            result[stage] = stageWords
+        }
+        result[null] = if (checkpointStore == null) {
+            changeChunk(
+                words,
+                startAt = startAt,
+                stopBefore = stopBefore,
+                romanize = romanize,
+                tracer = tracer,
+                intermediateSink = intermediateSink,
+            )
+        } else {
+            changeWithCheckpoints(
+                words,
+                startAt = startAt,
+                stopBefore = stopBefore,
+                romanize = romanize,
+                tracer = tracer,
+                checkpointStore = checkpointStore,
+                checkpointAt = checkpointAt,
+                intermediateSink = intermediateSink,
+            )
+        }
+        return result
+    }
+
+    /**
+     * Runs the sound changer on a stream of words, one chunk at a time.
+     * Only a single chunk of words is held in memory at once, so this is
+     * suitable for word lists too large to change in one go.
+     *
+     * Chunks are changed lazily as the returned sequence is consumed;
+     * each element of the returned sequence holds the final results for
+     * one chunk of input words, in order. Errors are encapsulated as in
+     * `changeWithIndividualErrors`.
+     *
+     * @param words The words to change; use `asSequence()` to stream from an `Iterator`
+     * @param chunkSize The maximum number of words to change at once
+     * @param intermediateSinks Functions to receive the output of the
+     * intermediate romanizer with the corresponding name, one chunk at a time.
+     * Stages without a sink are discarded.
+     *
+     * Other parameters are the same as `change`.
+     */
+    fun changeStreaming(
+        words: Sequence<String>,
+        chunkSize: Int = DEFAULT_CHUNK_SIZE,
+        startAt: String? = null,
+        stopBefore: String? = null,
+        debugWords: List<String> = emptyList(),
+        romanize: Boolean = true,
+        debug: (String) -> Unit = ::println,
+        intermediateSinks: Map<String, (List<Result<String>>) -> Unit> = emptyMap(),
+    ): Sequence<List<Result<String>>> {
+        require(chunkSize > 0) { "The chunk size must be positive" }
+        // Words are announced in the chunk they're first found in
+        val announced = mutableSetOf<String>()
+        return words.chunked(chunkSize).map { chunk ->
+            val tracer = Tracer.forWords(debug, chunk, debugWords, showWordNames = debugWords.size > 1)
+            val found = tracer.indexToDebugWords.values.filter { announced.add(it) }
+            if (found.isNotEmpty()) {
+                debug("Tracing ${found.joinToString(", ")}")
+            }
+            changeChunk(
+                chunk,
+                startAt = startAt,
+                stopBefore = stopBefore,
+                romanize = romanize,
+                tracer = tracer,
+            ) { stage, stageWords -> intermediateSinks[stage]?.invoke(stageWords) }
+        }
+    }
+
+    /**
+     * Runs the sound changes on a batch of words that fits in memory,
+     * passing the output of each intermediate romanizer to
+     * `intermediateSink` as soon as it's produced.
+     */
+    private fun changeChunk(
+        words: List<String>,
+        startAt: String?,
+        stopBefore: String?,
+        romanize: Boolean,
+        tracer: Tracer,
+        intermediateSink: (String, List<Result<String>>) -> Unit,
+    ): List<Result<String>> {
+        val plan = plan(startAt, stopBefore, romanize).steps
+        val finalPhrases = runSteps(plan, words, parsePhrases(words), tracer, intermediateSink)
+        return finalPhrases.toStrings()
+    }
+
+    /**
+     * Runs the sound changes on a batch of words, starting from the
+     * latest usable checkpoint and saving new checkpoints on the way.
+     */
+    private fun changeWithCheckpoints(
+        words: List<String>,
+        startAt: String?,
+        stopBefore: String?,
+        romanize: Boolean,
+        tracer: Tracer,
+        checkpointStore: CheckpointStore,
+        checkpointAt: List<String>,
+        intermediateSink: (String, List<Result<String>>) -> Unit,
+    ): List<Result<String>> {
+        val plan = plan(null, stopBefore, romanize)
+        for (ruleName in checkpointAt) {
+            if (rules.none { it.rule?.name == ruleName }) throw LscRuleNotFound(ruleName, "save a checkpoint at")
+        }
+        // Rules after stopBefore don't get checkpoints
+        val checkpointRules = (checkpointAt + listOfNotNull(startAt)).distinct().filter { it in plan.ruleStarts }
+        val startIndex = startAt?.let { plan.ruleStarts.getValue(it) } ?: 0
+
+        val wordsFingerprint = Checkpoint.fingerprint(words)
+        fun keyFor(ruleName: String): String = "$ruleName-$wordsFingerprint"
+
+        val fingerprints = Checkpoint.fingerprints(
+            listOf(initialDeclarations.fingerprint) + words,
+            plan.steps.map { it.fingerprint },
+        )
+
+        // Intermediate romanizers before startAt aren't reported
+        fun reportedStages(until: Int): List<String> =
+            plan.steps.subList(minOf(startIndex, until), until)
+                .filterIsInstance<PlannedIntermediate>().map { it.name }
+
+        val quietTracer = Tracer(tracer.debug, emptyMap())
+
+        // Resuming after startAt would skip the trace output for the steps in between
+        val resumed = plan.ruleStarts.entries.filter { startAt == null || it.value <= startIndex }
+            .sortedByDescending { it.value }
+            .firstNotNullOfOrNull { (ruleName, stepIndex) ->
+                val key = keyFor(ruleName)
+                if (checkpointStore.fingerprint(key) != fingerprints[stepIndex]) null
+                else checkpointStore.load(key)?.takeIf {
+                    it.phrases.size == words.size &&
+                            it.intermediates.keys.containsAll(reportedStages(stepIndex))
+                }?.let { stepIndex to it }
+            }
+        val resumeIndex = resumed?.first ?: 0
+
+        val intermediates = mutableMapOf<String, List<Result<String>>>()
+        var curPhrases = resumed?.second?.let { checkpoint ->
+            // Words that had failed when the checkpoint was saved
+            // have to catch up from the beginning
+            val failedIndices = checkpoint.phrases.indices.filter { checkpoint.phrases[it] == null }
+            val failedWords = failedIndices.map { words[it] }
+            val caughtUpIntermediates = mutableMapOf<String, List<Result<String>>>()
+            val caughtUp = runSteps(
+                plan.steps.take(resumeIndex),
+                failedWords,
+                parsePhrases(failedWords),
+                quietTracer,
+            ) { stage, stageWords -> caughtUpIntermediates[stage] = stageWords }
+            val failedSlots = failedIndices.withIndex().associate { it.value to it.index }
+
+            for ((stage, stageWords) in checkpoint.intermediates) {
+                intermediates[stage] = stageWords.mapIndexed { i, word ->
+                    failedSlots[i]?.let { caughtUpIntermediates.getValue(stage)[it] } ?: Result.success(word!!)
+                }
+            }
+            for (stage in reportedStages(resumeIndex)) {
+                intermediateSink(stage, intermediates.getValue(stage))
+            }
+
+            checkpoint.phrases.mapIndexed { i, phrase ->
+                failedSlots[i]?.let { caughtUp[it] } ?: Result.success(phrase!!)
+            }
+        } ?: parsePhrases(words)
+
+        val saveIndices = checkpointRules.groupBy { plan.ruleStarts.getValue(it) }
+            .filterKeys { resumed == null || it > resumeIndex }
+
+        fun saveCheckpoints(stepIndex: Int) {
+            val ruleNames = saveIndices[stepIndex] ?: return
+            val checkpoint = Checkpoint(
+                fingerprints[stepIndex],
+                curPhrases.map { it.getOrNull() },
+                intermediates.mapValues { (_, stageWords) -> stageWords.map { it.getOrNull() } },
+            )
+            for (ruleName in ruleNames) checkpointStore.save(keyFor(ruleName), checkpoint)
+        }
+
+        val boundaries = (saveIndices.keys + startIndex + resumeIndex + plan.steps.size).filter {
+            it >= resumeIndex
+        }.distinct().sorted()
+
+        for ((from, until) in boundaries.zipWithNext()) {
+            saveCheckpoints(from)
+            // Steps before startAt are only run to catch up, so they don't report anything
+            val catchingUp = from < startIndex
+            curPhrases = runSteps(
+                plan.steps.subList(from, until),
+                words,
+                curPhrases,
+                if (catchingUp) quietTracer else tracer,
+            ) { stage, stageWords ->
+                intermediates[stage] = stageWords
+                if (!catchingUp) intermediateSink(stage, stageWords)
+            }
+        }
+        saveCheckpoints(plan.steps.size)
+
+        return curPhrases.toStrings()
+    }
+
+    private fun parsePhrases(words: List<String>): List<Result<Phrase>> =
+        words.map {
+            Result.success(
+                Phrase(
+                    it.split(" ").map(
+                        initialDeclarations::parsePhonetic
+                    )
                 )
             )
         }
 
-        val result = mutableMapOf<String?, List<Result<String>>>()
+    private fun List<Result<Phrase>>.toStrings(): List<Result<String>> =
+        map { phrase ->
+            phrase.map {
+                it.string.normalizeCompose()
+            }
+        }
+
+    private fun runSteps(
+        plan: List<PlannedStep>,
+        words: List<String>,
+        startPhrases: List<Result<Phrase>>,
+        tracer: Tracer,
+        intermediateSink: (String, List<Result<String>>) -> Unit,
+    ): List<Result<Phrase>> {
+        val entries = profiler?.prepare(plan.map { it.kind to it.name })
+        return when (executionMode) {
+            ExecutionMode.RULE_MAJOR -> runRuleMajor(plan, words, startPhrases, tracer, intermediateSink, entries)
+            ExecutionMode.WORD_MAJOR -> runWordMajor(plan, words, startPhrases, tracer, intermediateSink, entries)
+        }
+    }
+
+    /**
+     * Runs the block, recording how long it took and how many
+     * words it changed in the profiler entry (if any)
+     */
+    @OptIn(ExperimentalTime::class)
+    private inline fun <T> profiled(entry: Profiler.Entry?, countChanged: (T) -> Long, block: () -> T): T {
+        if (entry == null) return block()
+        val (result, duration) = measureTimedValue(block)
+        entry.record(duration.inWholeNanoseconds, countChanged(result))
+        return result
+    }
+
+    private fun countChanged(curPhrases: List<Result<Phrase>>, newPhrases: List<Result<Phrase>>): Long =
+        curPhrases.zip(newPhrases).count { (curPhrase, newPhrase) -> newPhrase != curPhrase }.toLong()
+
+    /**
+     * Works out which steps to run, and in which order, without
+     * reference to any particular words. This depends only on
+     * the rules and the run options, so the same plan can be
+     * followed one rule at a time or one word at a time.
+     */
+    private fun plan(
+        startAt: String?,
+        stopBefore: String?,
+        romanize: Boolean,
+    ): Plan {
+        val persistentEffects = PersistentEffects()
+        val plan = mutableListOf<PlannedStep>()
+        val ruleStarts = mutableMapOf<String, Int>()
 
-        var curPhrases = startPhrases.map { Result.success(it) }
         var started = false
         var stopped = false
 
@@ -139,25 +460,19 @@ class SoundChanger(
                 "fake-romanizer", initialDeclarations, EmptyRule
             )
 
-        fun runAnchoredStep(anchoredStep: AnchoredStep) {
+        fun planAnchoredStep(anchoredStep: AnchoredStep) {
             when (anchoredStep) {
                 is IntermediateRomanizerStep -> {
-                    if (!started) {
-                        return
+                    if (started) {
+                        val rom = anchoredStep.romanizer
+                        plan += PlannedIntermediate(rom.name, maybeReplace(rom))
                     }
-                    val rom = anchoredStep.romanizer
-                    result[rom.name] = applyRule(
-                        maybeReplace(rom), words, curPhrases, tracer
-                    ).map { res -> res.map { it.string } }
                 }
 
                 is CleanupStep -> {
-                    if (!started) {
-                        return
+                    if (started) {
+                        plan += PlannedRule(anchoredStep.cleanupRule)
                     }
-                    curPhrases = applyRule(
-                        anchoredStep.cleanupRule, words, curPhrases, tracer
-                    )
                 }
 
                 is CleanupOffStep -> {
@@ -165,12 +480,9 @@ class SoundChanger(
                 }
 
                 is SyllabificationStep -> {
-                    if (!started) {
-                        return
+                    if (started) {
+                        plan += PlannedSyllabification(anchoredStep.declarations)
                     }
-                    curPhrases = applySyllables(
-                        anchoredStep.declarations, curPhrases, tracer
-                    )
                 }
             }
         }
@@ -183,13 +495,17 @@ class SoundChanger(
                 // They have to run before any syllabification rules,
                 // and if they're about to be cancelled, they need one
                 // last chance to run.
-                runAnchoredStep(anchoredStep)
+                planAnchoredStep(anchoredStep)
             }
 
             if (!started && (startAt == null || rule?.name == startAt)) {
                 started = true
             }
 
+            if (started && rule != null) {
+                ruleStarts[rule.name] = plan.size
+            }
+
             val stepsToRunBeforeSyllabification =
                 if (ruleWithAnchoredSteps.anchoredSteps.firstOrNull() is IntermediateRomanizerStep)
                     0 else 1
@@ -199,18 +515,18 @@ class SoundChanger(
                 // The first step is considered "more tightly bound" to the preceding
                 // rule, and can intervene before persistent syllabification
                 // rules.
-                runAnchoredStep(anchoredStep)
+                planAnchoredStep(anchoredStep)
                 persistentEffects += anchoredStep
             }
 
             persistentEffects.syllabificationStep?.let {
                 // Now run the persistent syllabification rule, if any.
-                runAnchoredStep(it)
+                planAnchoredStep(it)
             }
 
             for (anchoredStep in ruleWithAnchoredSteps.anchoredSteps.drop(stepsToRunBeforeSyllabification)) {
                 // Now run the remaining anchored steps, in declaration order.
-                runAnchoredStep(anchoredStep)
+                planAnchoredStep(anchoredStep)
                 persistentEffects += anchoredStep
             }
 
@@ -221,9 +537,7 @@ class SoundChanger(
 
             if (started) {
                 if (rule != null && (romanize || rule.ruleType != RuleType.ROMANIZER)) {
-                    curPhrases = applyRule(
-                        rule, words, curPhrases, tracer
-                    )
+                    plan += PlannedRule(rule)
                 }
             }
         }
@@ -235,13 +549,194 @@ class SoundChanger(
             throw LscRuleNotFound(startAt, "start at")
         }
 
-        result[null] = curPhrases.map { phrase ->
-            phrase.map {
-                it.string.normalizeCompose()
+        return Plan(plan, ruleStarts)
+    }
+
+    /**
+     * @param steps The steps to run, in order
+     * @param ruleStarts For each rule, the index of the step where
+     * a run starting at that rule would start
+     */
+    private class Plan(val steps: List<PlannedStep>, val ruleStarts: Map<String, Int>)
+
+    /**
+     * Applies each step of the plan to every word before moving
+     * on to the next step.
+     */
+    private fun runRuleMajor(
+        plan: List<PlannedStep>,
+        words: List<String>,
+        startPhrases: List<Result<Phrase>>,
+        tracer: Tracer,
+        intermediateSink: (String, List<Result<String>>) -> Unit,
+        profilerEntries: List<Profiler.Entry>?,
+    ): List<Result<Phrase>> {
+        var curPhrases = startPhrases
+        val stableSteps = List(startPhrases.size) { StableSteps() }
+
+        for ((stepIndex, step) in plan.withIndex()) {
+            val entry = profilerEntries?.get(stepIndex)
+            val newPhrases = profiled(entry, { countChanged(curPhrases, it) }) {
+                when (step) {
+                    is PlannedRule -> applyRule(
+                        step.rule, words, curPhrases, tracer, stableSteps, entry?.matchStats
+                    )
+
+                    is PlannedSyllabification -> applySyllables(
+                        step.declarations, curPhrases, tracer, stableSteps
+                    )
+
+                    is PlannedIntermediate -> applyRule(
+                        step.romanizer, words, curPhrases, tracer, null, entry?.matchStats
+                    )
+                }
+            }
+            if (step is PlannedIntermediate) {
+                intermediateSink(step.name, newPhrases.map { res -> res.map { it.string } })
+            } else {
+                curPhrases = newPhrases
             }
         }
 
-        return result
+        return curPhrases
+    }
+
+    /**
+     * Applies every step of the plan to each word before moving
+     * on to the next word. The words are only split between workers
+     * once, and each word stays with the same worker for the whole run.
+     *
+     * Trace output and intermediate results are buffered until
+     * all the words are finished, then reported in the same order
+     * as `runRuleMajor` would report them.
+     */
+    private fun runWordMajor(
+        plan: List<PlannedStep>,
+        words: List<String>,
+        startPhrases: List<Result<Phrase>>,
+        tracer: Tracer,
+        intermediateSink: (String, List<Result<String>>) -> Unit,
+        profilerEntries: List<Profiler.Entry>?,
+    ): List<Result<Phrase>> {
+        val intermediateSteps = plan.withIndex().filter { it.value is PlannedIntermediate }
+        val intermediateSlots = intermediateSteps.withIndex().associate { it.value.index to it.index }
+
+        val wordRuns = startPhrases.withIndex().toList().fastZipMap(words, executionPolicy) { (index, startPhrase), word ->
+            val traced = tracer.isTracing(index)
+            val traceLines = if (traced) mutableListOf<IndexedValue<String>>() else null
+            val intermediates = arrayOfNulls<Result<String>>(intermediateSlots.size)
+            val stableSteps = StableSteps()
+            var curPhrase = startPhrase
+
+            for ((stepIndex, step) in plan.withIndex()) {
+                val entry = profilerEntries?.get(stepIndex)
+                val newPhrase = profiled(entry, { if (it != curPhrase) 1L else 0L }) {
+                    when (step) {
+                        is PlannedRule -> applyRuleToPhrase(step.rule, word, curPhrase, stableSteps, entry?.matchStats)
+                        is PlannedSyllabification -> syllabifyPhrase(step.declarations, curPhrase, stableSteps)
+                        is PlannedIntermediate -> applyRuleToPhrase(
+                            step.romanizer, word, curPhrase, null, entry?.matchStats
+                        )
+                    }
+                }
+                traceLines?.let { lines ->
+                    tracer.line(step.name, index, curPhrase, newPhrase)?.let {
+                        lines += IndexedValue(stepIndex, it)
+                    }
+                }
+                if (step is PlannedIntermediate) {
+                    intermediates[intermediateSlots.getValue(stepIndex)] = newPhrase.map { it.string }
+                } else {
+                    curPhrase = newPhrase
+                }
+            }
+
+            WordRun(curPhrase, intermediates, traceLines)
+        }
+
+        wordRuns.flatMap { it.traceLines ?: emptyList() }
+            .sortedBy { it.index }
+            .forEach { tracer.debug(it.value) }
+
+        for ((slot, intermediateStep) in intermediateSteps.withIndex()) {
+            intermediateSink(
+                (intermediateStep.value as PlannedIntermediate).name,
+                wordRuns.map { it.intermediates[slot]!! },
+            )
+        }
+
+        return wordRuns.map { it.finalPhrase }
+    }
+
+    private class WordRun(
+        val finalPhrase: Result<Phrase>,
+        val intermediates: Array<Result<String>?>,
+        val traceLines: List<IndexedValue<String>>?,
+    )
+
+    private sealed interface PlannedStep {
+        val name: String
+
+        val kind: StepKind
+
+        /**
+         * Describes everything about this step that affects its results,
+         * for checkpoint fingerprints
+         */
+        val fingerprint: String
+    }
+
+    private class PlannedRule(val rule: NamedRule) : PlannedStep {
+        override val name: String
+            get() = rule.name
+
+        override val kind: StepKind
+            get() = StepKind.RULE
+
+        override val fingerprint: String
+            get() = rule.fingerprint
+    }
+
+    private class PlannedSyllabification(val declarations: Declarations) : PlannedStep {
+        override val name: String
+            get() = "syllables"
+
+        override val kind: StepKind
+            get() = StepKind.SYLLABIFICATION
+
+        override val fingerprint: String
+            get() = "Syllables with ${declarations.fingerprint}"
+    }
+
+    private class PlannedIntermediate(override val name: String, val romanizer: NamedRule) : PlannedStep {
+        override val kind: StepKind
+            get() = StepKind.INTERMEDIATE_ROMANIZER
+
+        override val fingerprint: String
+            get() = "Intermediate $name: ${romanizer.fingerprint}"
+    }
+
+    /**
+     * The steps known to leave a word as it is, so that they can be
+     * skipped until something else changes the word. Persistent
+     * syllabification and cleanup steps run after every rule,
+     * but most rules leave most words alone.
+     *
+     * Rules are identified by the rule itself, and syllabification
+     * steps by their declarations.
+     */
+    private class StableSteps {
+        private val steps = HashSet<Any>()
+
+        operator fun contains(step: Any): Boolean = step in steps
+
+        /**
+         * Records that running ``step`` on ``curPhrase`` gave ``newPhrase``,
+         * which is the same object if the step didn't change anything
+         */
+        fun record(step: Any, curPhrase: Phrase, newPhrase: Phrase) {
+            if (newPhrase === curPhrase) steps += step else steps.clear()
+        }
     }
 
     private class PersistentEffects(
@@ -264,8 +759,9 @@ class SoundChanger(
     private class Tracer(
         val debug: (String) -> Unit,
         val indexToDebugWords: Map<Int, String>,
+        val showWordNames: Boolean = indexToDebugWords.size > 1,
     ) {
-        init {
+        fun announce() {
             if (indexToDebugWords.isNotEmpty()) {
                 debug("Tracing ${indexToDebugWords.values.joinToString(", ")}")
             }
@@ -277,55 +773,123 @@ class SoundChanger(
             newPhrases: List<Result<Phrase>>,
         ) {
             for (i in indexToDebugWords.keys) {
-                if (newPhrases[i] != curPhrases[i]) {
-                    debug("Applied ${name}${appliedTo(i)}: ${curPhrases[i].string} -> ${newPhrases[i].string}")
-                }
+                line(name, i, curPhrases[i], newPhrases[i])?.let(debug)
             }
         }
 
+        fun isTracing(index: Int): Boolean = index in indexToDebugWords
+
+        /**
+         * The trace line for a single word, or null if the step
+         * didn't change it
+         */
+        fun line(
+            name: String,
+            index: Int,
+            curPhrase: Result<Phrase>,
+            newPhrase: Result<Phrase>,
+        ): String? =
+            if (newPhrase != curPhrase) {
+                "Applied ${name}${appliedTo(index)}: ${curPhrase.string} -> ${newPhrase.string}"
+            } else null
+
         private val Result<Phrase>.string: String
             get() = map { it.string }.getOrElse { "ERROR" }
 
         fun appliedTo(index: Int): String =
-            if (indexToDebugWords.size > 1) {
+            if (showWordNames) {
                 " to ${indexToDebugWords[index]}"
             } else {
                 ""
             }
+
+        companion object {
+            fun forWords(
+                debug: (String) -> Unit,
+                words: List<String>,
+                debugWords: List<String>,
+                showWordNames: Boolean? = null,
+            ): Tracer {
+                val indexToDebugWords = words.withIndex()
+                    .filter { it.value in debugWords }
+                    .associate { it.index to it.value }
+                return Tracer(debug, indexToDebugWords, showWordNames ?: (indexToDebugWords.size > 1))
+            }
+        }
     }
 
     private fun applySyllables(
         declarations: Declarations,
         curPhrases: List<Result<Phrase>>,
         tracer: Tracer,
+        stableSteps: List<StableSteps>,
     ): List<Result<Phrase>> =
-        curPhrases.map { curResult ->
-            curResult.mapCatching {
-                declarations.syllabify(it)
-            }
+        curPhrases.mapIndexed { index, curResult ->
+            syllabifyPhrase(declarations, curResult, stableSteps[index])
         }.also { newPhrases ->
             tracer("syllables", curPhrases, newPhrases)
         }
 
+    private fun syllabifyPhrase(
+        declarations: Declarations,
+        curResult: Result<Phrase>,
+        stableSteps: StableSteps,
+    ): Result<Phrase> =
+        curResult.mapCatching { curPhrase ->
+            if (declarations in stableSteps) return@mapCatching curPhrase
+            val newPhrase = declarations.syllabify(curPhrase).let { if (it == curPhrase) curPhrase else it }
+            stableSteps.record(declarations, curPhrase, newPhrase)
+            newPhrase
+        }
+
+    /**
+     * @param stableSteps The steps known to leave each word unchanged,
+     * or null if the rule's output doesn't replace the words
+     * (i.e. it's an intermediate romanizer)
+     * @param stats Where to count the rule's matching work, if it's being profiled
+     */
     private fun applyRule(
         rule: NamedRule,
         origPhrases: List<String>,
         curPhrases: List<Result<Phrase>>,
         tracer: Tracer,
+        stableSteps: List<StableSteps>?,
+        stats: MatchStats?,
     ): List<Result<Phrase>> =
-        curPhrases.fastZipMap(origPhrases) { curResult, phrase ->
-            curResult.mapCatching { curPhrase ->
-                try {
-                    rule(curPhrase).removeBoundingBreaks()
-                } catch (e: Exception) {
-                    if (e is UserError) throw LscRuleNotApplicable(e, rule.name, phrase, curPhrase.string)
-                    else throw LscRuleCrashed(e, rule.name, phrase, curPhrase.string)
+        if (rule.guard?.admits(SegmentInventory.union(curPhrases.mapNotNull { it.getOrNull() })) == false) {
+            // Nothing in the whole batch can match the rule, so skip straight to the cleanup
+            curPhrases.mapIndexed { index, curResult ->
+                curResult.map { curPhrase ->
+                    curPhrase.removeBoundingBreaks().also { stableSteps?.get(index)?.record(rule, curPhrase, it) }
                 }
             }
+        } else {
+            curPhrases.withIndex().toList().fastZipMap(origPhrases, executionPolicy) { (index, curResult), phrase ->
+                applyRuleToPhrase(rule, phrase, curResult, stableSteps?.get(index), stats)
+            }
         }.also { newPhrases ->
             tracer(rule.name, curPhrases, newPhrases)
         }
 
+    private fun applyRuleToPhrase(
+        rule: NamedRule,
+        origPhrase: String,
+        curResult: Result<Phrase>,
+        stableSteps: StableSteps?,
+        stats: MatchStats?,
+    ): Result<Phrase> =
+        curResult.mapCatching { curPhrase ->
+            if (stableSteps != null && rule in stableSteps) return@mapCatching curPhrase
+            val newPhrase = try {
+                (rule.changeOrNull(curPhrase, stats) ?: curPhrase).removeBoundingBreaks()
+            } catch (e: Exception) {
+                if (e is UserError) throw LscRuleNotApplicable(e, rule.name, origPhrase, curPhrase.string)
+                else throw LscRuleCrashed(e, rule.name, origPhrase, curPhrase.string)
+            }
+            stableSteps?.record(rule, curPhrase, newPhrase)
+            newPhrase
+        }
+
     data class RuleWithAnchoredSteps(
         val rule: NamedRule?,
         val anchoredSteps: List<AnchoredStep>,
@@ -342,6 +906,11 @@ class SoundChanger(
     data class SyllabificationStep(val declarations: Declarations) : AnchoredStep
 
     companion object {
+        /**
+         * The number of words `changeStreaming` changes at once by default
+         */
+        const val DEFAULT_CHUNK_SIZE: Int = 10_000
+
         fun change(
             changes: String,
             words: List<String>,
@@ -375,6 +944,24 @@ class SoundChanger(
     )
 }
 
+/**
+ * The order in which a sound changer applies its rules to a batch of words.
+ * Both modes produce exactly the same results.
+ */
+enum class ExecutionMode {
+    /**
+     * Apply each rule to every word before moving on to the next rule.
+     */
+    RULE_MAJOR,
+
+    /**
+     * Apply every rule to each word before moving on to the next word.
+     * This splits the words between workers only once per batch, rather
+     * than once per rule, and keeps each word in the same worker throughout.
+     */
+    WORD_MAJOR,
+}
+
 internal fun makeStageComparisons(wordListSequence: List<List<String>>): List<String> {
     val result = mutableListOf<String>()
     val maxLengths = wordListSequence.map { it.maxLength() }
@@ -393,7 +980,16 @@ internal fun makeStageComparisons(wordListSequence: List<List<String>>): List<St
 
 internal fun Iterable<String>.maxLength(): Int = maxOfOrNull { it.lengthCombining() } ?: 0
 
-expect fun <T, U, R> Iterable<T>.fastZipMap(other: Iterable<U>, function: (T, U) -> R): List<R>
+/**
+ * Applies the function to corresponding pairs of elements from
+ * the two lists, splitting the work between threads as specified
+ * by the policy where the platform supports it.
+ */
+expect fun <T, U, R> List<T>.fastZipMap(
+    other: List<U>,
+    policy: ExecutionPolicy = ExecutionPolicy.DEFAULT,
+    function: (T, U) -> R,
+): List<R>
 
 class LscRuleNotApplicable(
     val reason: UserError,
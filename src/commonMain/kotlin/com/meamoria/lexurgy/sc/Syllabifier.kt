@@ -8,55 +8,84 @@ class Syllabifier(
     val declarations: Declarations,
     val patterns: List<Pattern>,
 ) {
+    // Keyed by the whole word, so that words with the same segments
+    // and the same existing syllables share their syllable assignment
+    private val assignmentCache = Cache<StandardWord, SyllableAssignment>(declarations.cacheSize)
+
+    /**
+     * The hits, misses and evictions of the cache of syllable assignments
+     */
+    val cacheStats: CacheStats
+        get() = assignmentCache.stats
+
+    fun resetCacheStats() {
+        assignmentCache.resetStats()
+    }
+
+    fun clearCache() {
+        assignmentCache.clear()
+    }
+
     fun syllabify(word: Word): Word =
         if (patterns.isEmpty()) word else {
-            val syllableSequence = findBestSyllableSequence(word)
-            val patternMatches = syllableSequence.patternMatches
-            val newSyllableBreaks = patternMatches.dropLast(1).map { it.end }
-            val newSyllableMatrices =
-                patternMatches.withIndex().filter {
-                    it.value.assignedMatrix != null
-                }.associate { it.index to it.value.assignedMatrix!! }
+            val assignment = assignmentCache.getOrPut(word.toStandard()) { assignSyllables(word) }
             val combinedSyllableModifiers = combineSyllableModifiers(
-                word, newSyllableBreaks, newSyllableMatrices
+                word, assignment.syllableBreaks, assignment.syllableMatrices
             )
             StandardWord(word.segments).withSyllabification(
-                newSyllableBreaks,
+                assignment.syllableBreaks,
                 combinedSyllableModifiers,
             )
         }
 
-    private fun findBestSyllableSequence(word: Word): PatternMatchSequence {
-        val syllableSequences = Array<PatternMatchSequence?>(word.length + 1) { null }
-        syllableSequences[0] = PatternMatchSequence(emptyList())
+    private fun assignSyllables(word: Word): SyllableAssignment {
+        val chart = SyllableChart(word.length)
+        val best = findBestSyllableSequence(word, chart)
+        val depth = chart.depth(best)
+        val ends = IntArray(depth)
+        val patternNumbers = IntArray(depth)
+        var node = best
+        for (syllable in depth - 1 downTo 0) {
+            ends[syllable] = chart.end(node)
+            patternNumbers[syllable] = chart.patternNumber(node)
+            node = chart.previous(node)
+        }
+        return SyllableAssignment(
+            ends.asList().dropLast(1),
+            patternNumbers.withIndex().mapNotNull { (syllable, patternNumber) ->
+                patterns[patternNumber].assignedMatrix?.let { syllable to it }
+            }.toMap(),
+        )
+    }
+
+    /**
+     * Where the syllable breaks go in a word, and the
+     * matrices the patterns assign to its syllables
+     */
+    private class SyllableAssignment(
+        val syllableBreaks: List<Int>,
+        val syllableMatrices: Map<Int, Matrix>,
+    )
+
+    /**
+     * Finds the best sequence of pattern matches covering the word, going
+     * through the word once and keeping only the best sequence ending at each
+     * index. Returns the node for the last match of the sequence.
+     */
+    private fun findBestSyllableSequence(word: Word, chart: SyllableChart): Int {
+        val phrase = Phrase(word)
         for (i in 0 until word.length) {
-            val prev = syllableSequences[i]?.takeIf { !it.isPartial } ?: continue
-            val newSequences = patterns.flatMapIndexed { patternNumber, pattern ->
-                pattern.matcher.claim(
-                    Phrase(word),
-                    PhraseIndex(0, i),
-                    Bindings(),
-                    partial = true,
-                ).map {
-                    prev + PatternMatch(
-                        patternNumber,
-                        it.index.segmentIndex,
-                        pattern.assignedMatrix,
-                        isPartial = it.isPartial,
-                    )
-                }
-            }
-            for (sequence in newSequences) {
-                val existing = syllableSequences[sequence.end]
-                if (existing == null || sequence < existing) {
-                    syllableSequences[sequence.end] = sequence
+            val prev = chart.best(i)
+            if (prev < 0 || chart.isPartial(prev)) continue
+            for ((patternNumber, pattern) in patterns.withIndex()) {
+                for (matchEnd in pattern.matcher.claim(phrase, PhraseIndex(0, i), Bindings.EMPTY, partial = true)) {
+                    chart.offer(prev, patternNumber, matchEnd.index.segmentIndex, matchEnd.isPartial)
                 }
             }
         }
-        syllableSequences[word.length]?.takeIf { !it.isPartial }?.let {
-            return it
-        }
-        syllableStructureViolated(word, syllableSequences)
+        val best = chart.best(word.length)
+        if (best >= 0 && !chart.isPartial(best)) return best
+        syllableStructureViolated(word, chart)
     }
 
     private fun combineSyllableModifiers(
@@ -98,17 +127,11 @@ class Syllabifier(
         return result
     }
 
-    private fun syllableStructureViolated(
-        word: Word,
-        syllableSequences: Array<PatternMatchSequence?>
-    ): Nothing {
-        val longestSequenceIndex = syllableSequences.indexOfLast { it != null }
-        val longestSequence = syllableSequences[longestSequenceIndex]!!
-        val lastSyllableBreak = if (longestSequence.isPartial) {
-            val longestMatches = longestSequence.patternMatches
-            if (longestMatches.size <= 1) 0 else {
-                longestMatches[longestMatches.lastIndex - 1].end
-            }
+    private fun syllableStructureViolated(word: Word, chart: SyllableChart): Nothing {
+        val longestSequenceIndex = (word.length downTo 0).first { chart.best(it) >= 0 }
+        val longestSequence = chart.best(longestSequenceIndex)
+        val lastSyllableBreak = if (chart.isPartial(longestSequence)) {
+            if (chart.depth(longestSequence) <= 1) 0 else chart.end(chart.previous(longestSequence))
         } else longestSequenceIndex
         throw SyllableStructureViolated(
             word,
@@ -119,38 +142,90 @@ class Syllabifier(
 
     data class Pattern(val matcher: Matcher, val assignedMatrix: Matrix?)
 
-    private data class PatternMatch(
-        val patternNumber: Int,
-        val end: Int,
-        val assignedMatrix: Matrix?,
-        val isPartial: Boolean = false,
-    )
+    /**
+     * The sequences of pattern matches found so far in a word, stored as
+     * nodes in primitive arrays. Each node is a pattern match pointing back
+     * at the node for the match before it, so extending a sequence by one
+     * match doesn't copy it; node 0 is the empty sequence at the start.
+     *
+     * Sequences ending at the same index are compared by whether they're
+     * partial (complete sequences first), then match by match from the
+     * start, by where each match ends and then by pattern number.
+     */
+    private class SyllableChart(wordLength: Int) {
+        private var size = 1
+        private var previous = IntArray(INITIAL_CAPACITY)
+        private var ends = IntArray(INITIAL_CAPACITY)
+        private var patternNumbers = IntArray(INITIAL_CAPACITY)
+        private var depths = IntArray(INITIAL_CAPACITY)
+        private var partial = BooleanArray(INITIAL_CAPACITY)
 
-    private data class PatternMatchSequence(
-        val patternMatches: List<PatternMatch>,
-    ) : Comparable<PatternMatchSequence> {
+        // The best node ending at each index, or -1 if nothing ends there yet
+        private val best = IntArray(wordLength + 1) { -1 }.also { it[0] = 0 }
 
-        val end: Int = patternMatches.lastOrNull()?.end ?: 0
+        fun best(index: Int): Int = best[index]
 
-        val isPartial: Boolean = patternMatches.lastOrNull()?.isPartial == true
+        fun previous(node: Int): Int = previous[node]
 
-        override fun compareTo(other: PatternMatchSequence): Int {
-            if (this.isPartial != other.isPartial) {
-                return this.isPartial.compareTo(other.isPartial)
-            }
-            for ((thisPattern, otherPattern) in patternMatches.zip(other.patternMatches)) {
-                if (thisPattern.end != otherPattern.end) {
-                    return thisPattern.end.compareTo(otherPattern.end)
-                }
-                if (thisPattern.patternNumber != otherPattern.patternNumber) {
-                    return thisPattern.patternNumber.compareTo(otherPattern.patternNumber)
+        fun end(node: Int): Int = ends[node]
+
+        fun patternNumber(node: Int): Int = patternNumbers[node]
+
+        fun depth(node: Int): Int = depths[node]
+
+        fun isPartial(node: Int): Boolean = partial[node]
+
+        /**
+         * Extends the sequence ending at ``prev`` by a match, keeping
+         * the new sequence if it's better than the best one so far
+         * ending at the same index
+         */
+        fun offer(prev: Int, patternNumber: Int, end: Int, isPartial: Boolean) {
+            if (size == ends.size) grow()
+            val node = size++
+            previous[node] = prev
+            ends[node] = end
+            patternNumbers[node] = patternNumber
+            depths[node] = depths[prev] + 1
+            partial[node] = isPartial
+            val existing = best[end]
+            if (existing < 0 || compare(node, existing) < 0) best[end] = node
+        }
+
+        private fun compare(a: Int, b: Int): Int {
+            if (partial[a] != partial[b]) return partial[a].compareTo(partial[b])
+            // Matches past the end of the shorter sequence don't count
+            var x = a
+            var y = b
+            while (depths[x] > depths[y]) x = previous[x]
+            while (depths[y] > depths[x]) y = previous[y]
+            // Walk back to where the sequences share their matches;
+            // the last difference on the way is the first one from the start
+            var result = 0
+            while (x != y) {
+                if (ends[x] != ends[y]) {
+                    result = ends[x].compareTo(ends[y])
+                } else if (patternNumbers[x] != patternNumbers[y]) {
+                    result = patternNumbers[x].compareTo(patternNumbers[y])
                 }
+                x = previous[x]
+                y = previous[y]
             }
-            return 0
+            return result
         }
 
-        operator fun plus(patternMatch: PatternMatch): PatternMatchSequence =
-            PatternMatchSequence(patternMatches + patternMatch)
+        private fun grow() {
+            val capacity = size * 2
+            previous = previous.copyOf(capacity)
+            ends = ends.copyOf(capacity)
+            patternNumbers = patternNumbers.copyOf(capacity)
+            depths = depths.copyOf(capacity)
+            partial = partial.copyOf(capacity)
+        }
+
+        companion object {
+            private const val INITIAL_CAPACITY = 16
+        }
     }
 }
 
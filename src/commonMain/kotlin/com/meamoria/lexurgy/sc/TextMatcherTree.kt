@@ -4,14 +4,19 @@ import com.meamoria.lexurgy.word.Segment
 import com.meamoria.lexurgy.word.Word
 import com.meamoria.lexurgy.sc.element.AbstractTextMatcher
 
-class TextMatcherTree(val declarations: Declarations, elements: List<AbstractTextMatcher>) {
-    private val root = Node()
+class TextMatcherTree(val declarations: Declarations, private val elements: List<AbstractTextMatcher>) {
+    private val root = buildTree { it.segments }
 
-    init {
+    // The same tree for the elements read from end to start,
+    // which is only needed by matchers in lookbehind
+    private val backwardRoot by lazy { buildTree { it.segments.asReversed() } }
+
+    private fun buildTree(segments: (Word) -> List<Segment>): Node {
+        val root = Node()
         for ((i, matcher) in elements.withIndex()) {
             var curtree = root
             with (declarations) {
-                for (segment in matcher.text) {
+                for (segment in segments(matcher.text)) {
                     curtree = curtree.children.getOrPut(
                         segment.withoutFloatingDiacritics(), ::Node
                     )
@@ -19,6 +24,7 @@ class TextMatcherTree(val declarations: Declarations, elements: List<AbstractTex
             }
             curtree.indices += i
         }
+        return root
     }
 
     /**
@@ -30,19 +36,45 @@ class TextMatcherTree(val declarations: Declarations, elements: List<AbstractTex
     fun tryMatch(word: Word, start: Int): List<Int> {
         var cur = start
         var curtree = root
-        val result = mutableListOf<Int>()
+        var result: MutableList<Int>? = null
         with (declarations) {
             while (cur < word.length) {
                 val segment = word[cur].withoutFloatingDiacritics()
                 curtree.children[segment]?.let { child ->
-                    result += child.indices
+                    if (child.indices.isNotEmpty()) {
+                        (result ?: mutableListOf<Int>().also { result = it }).addAll(child.indices)
+                    }
                     curtree = child
                     cur++
                 } ?: break
             }
         }
 
-        return result.sorted()
+        return result?.apply { sort() } ?: emptyList()
+    }
+
+    /**
+     * Like ``tryMatch``, but matches the slice of the word
+     * that finishes at the specified end position.
+     */
+    fun tryMatchBackward(word: Word, end: Int): List<Int> {
+        var cur = end
+        var curtree = backwardRoot
+        var result: MutableList<Int>? = null
+        with (declarations) {
+            while (cur > 0) {
+                val segment = word[cur - 1].withoutFloatingDiacritics()
+                curtree.children[segment]?.let { child ->
+                    if (child.indices.isNotEmpty()) {
+                        (result ?: mutableListOf<Int>().also { result = it }).addAll(child.indices)
+                    }
+                    curtree = child
+                    cur--
+                } ?: break
+            }
+        }
+
+        return result?.apply { sort() } ?: emptyList()
     }
 
     override fun toString(): String = "SegmentTree" + root.subtreeString()
@@ -4,32 +4,126 @@ import com.meamoria.lexurgy.LscUserError
 import com.meamoria.lexurgy.word.Phrase
 import com.meamoria.lexurgy.sc.element.Matcher
 
-class Bindings(
-    val features: Map<Feature, SimpleValue> = emptyMap(),
-    val captures: Map<Int, Capture> = emptyMap(),
+/**
+ * The feature variables and captures bound so far in a match.
+ *
+ * Bindings are persistent: binding something returns a new ``Bindings``
+ * and leaves the old one alone. Matches rarely bind more than a handful
+ * of things, so they're kept in small arrays (in the order they were
+ * bound) rather than maps. Binding a feature shares the captures with
+ * the old ``Bindings`` and vice versa, and rebinding something to the
+ * value it already has (or combining with an empty ``Bindings``)
+ * doesn't allocate anything.
+ */
+class Bindings private constructor(
+    private val featureKeys: Array<Feature>,
+    private val featureValues: Array<SimpleValue>,
+    private val captureNumbers: IntArray,
+    private val captureValues: Array<Capture>,
 ) {
-    fun bindFeature(feature: Feature, value: SimpleValue): Bindings =
-        Bindings(
-            features + (feature to value),
-            captures,
-        )
-
-    fun bindCapture(number: Int, value: Capture): Bindings =
-        Bindings(
-            features,
-            captures + (number to value),
-        )
+    constructor() : this(NO_FEATURES, NO_VALUES, NO_NUMBERS, NO_CAPTURES)
+
+    val features: Map<Feature, SimpleValue>
+        get() =
+            if (featureKeys.isEmpty()) emptyMap()
+            else featureKeys.indices.associate { featureKeys[it] to featureValues[it] }
+
+    val captures: Map<Int, Capture>
+        get() =
+            if (captureNumbers.isEmpty()) emptyMap()
+            else captureNumbers.indices.associate { captureNumbers[it] to captureValues[it] }
+
+    fun isEmpty(): Boolean = featureKeys.isEmpty() && captureNumbers.isEmpty()
+
+    /**
+     * The number of bound features. Along with ``boundFeature`` and
+     * ``boundValue``, this walks the feature bindings without building
+     * the map ``features`` does.
+     */
+    internal val featureCount: Int
+        get() = featureKeys.size
+
+    internal fun boundFeature(index: Int): Feature = featureKeys[index]
+
+    internal fun boundValue(index: Int): SimpleValue = featureValues[index]
+
+    fun feature(feature: Feature): SimpleValue? =
+        featureKeys.indexOf(feature).let { if (it < 0) null else featureValues[it] }
+
+    fun capture(number: Int): Capture? =
+        captureNumbers.indexOf(number).let { if (it < 0) null else captureValues[it] }
+
+    fun hasCapture(number: Int): Boolean = number in captureNumbers
+
+    fun bindFeature(feature: Feature, value: SimpleValue): Bindings {
+        val index = featureKeys.indexOf(feature)
+        return when {
+            index < 0 -> Bindings(
+                featureKeys.plusElement(feature),
+                featureValues.plusElement(value),
+                captureNumbers,
+                captureValues,
+            )
+
+            featureValues[index] == value -> this
+
+            else -> Bindings(
+                featureKeys,
+                featureValues.copyOf().also { it[index] = value },
+                captureNumbers,
+                captureValues,
+            )
+        }
+    }
+
+    fun bindCapture(number: Int, value: Capture): Bindings {
+        val index = captureNumbers.indexOf(number)
+        return when {
+            index < 0 -> Bindings(
+                featureKeys,
+                featureValues,
+                captureNumbers + number,
+                captureValues.plusElement(value),
+            )
+
+            captureValues[index] == value -> this
+
+            else -> Bindings(
+                featureKeys,
+                featureValues,
+                captureNumbers,
+                captureValues.copyOf().also { it[index] = value },
+            )
+        }
+    }
 
     /**
      * Returns a ``Bindings`` that combines the bindings
      * from this and other
      */
-    fun combine(other: Bindings): Bindings = Bindings(
-        features + other.features,
-        captures + other.captures,
-    )
+    fun combine(other: Bindings): Bindings {
+        if (other === this || other.isEmpty()) return this
+        if (isEmpty()) return other
+        var result = this
+        for (i in other.featureKeys.indices) {
+            result = result.bindFeature(other.featureKeys[i], other.featureValues[i])
+        }
+        for (i in other.captureNumbers.indices) {
+            result = result.bindCapture(other.captureNumbers[i], other.captureValues[i])
+        }
+        return result
+    }
 
     override fun toString(): String = "$captures; $features"
+
+    companion object {
+        private val NO_FEATURES = emptyArray<Feature>()
+        private val NO_VALUES = emptyArray<SimpleValue>()
+        private val NO_NUMBERS = IntArray(0)
+        private val NO_CAPTURES = emptyArray<Capture>()
+
+        val EMPTY: Bindings = Bindings()
+    }
 }
 
 data class Capture(val matcher: Matcher, val matchedPhrase: Phrase)
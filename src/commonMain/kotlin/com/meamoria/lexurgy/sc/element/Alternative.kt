@@ -34,9 +34,39 @@ class AlternativeMatcher(
         start: PhraseIndex,
         bindings: Bindings,
         partial: Boolean,
+    ): List<PhraseMatchEnd> =
+        if (partial) {
+            groupedElements.flatMap { element ->
+                element.claim(phrase, start, bindings, partial)
+            }.checkTooManyOptions()
+        } else {
+            collectClaims(phrase, start, bindings)
+        }
+
+    override fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean {
+        var optionCount = 0
+        for (element in groupedElements) {
+            val finished = element.claimEach(phrase, start, bindings) { end ->
+                checkTooManyOptions(this, ++optionCount)
+                sink(end)
+            }
+            if (!finished) return false
+        }
+        return true
+    }
+
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
     ): List<PhraseMatchEnd> =
         groupedElements.flatMap { element ->
-            element.claim(phrase, start, bindings, partial)
+            element.claimBackward(phrase, end, bindings)
         }.checkTooManyOptions()
 
     override fun length(bindings: Bindings): Int? =
@@ -123,10 +153,25 @@ class AlternativeTransformer(
         phrase: Phrase,
         start: PhraseIndex,
         bindings: Bindings
-    ): List<UnboundTransformation> =
-        elements.flatMap { element ->
-            element.transform(order, phrase, start, bindings)
-        }.checkTooManyOptions()
+    ): List<UnboundTransformation> = collectTransformations(order, phrase, start, bindings)
+
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean {
+        var optionCount = 0
+        for (element in elements) {
+            val finished = element.transformEach(order, phrase, start, bindings) {
+                checkTooManyOptions(this, ++optionCount)
+                sink(it)
+            }
+            if (!finished) return false
+        }
+        return true
+    }
 
     override fun toString(): String = elements.joinToString(
         prefix = "{",
@@ -152,6 +197,25 @@ internal class ClassMatcher(
             elements[it].claim(phrase, start, bindings, partial)
         }
 
+    override fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean =
+        tree.tryMatch(phrase[start.wordIndex], start.segmentIndex).all {
+            elements[it].claimEach(phrase, start, bindings, sink)
+        }
+
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        tree.tryMatchBackward(phrase[end.wordIndex], end.segmentIndex).flatMap {
+            elements[it].claimBackward(phrase, end, bindings)
+        }
+
     override fun length(bindings: Bindings): Int? =
         elements.uniformOrNull { it.length(bindings) }
 
@@ -178,6 +242,8 @@ internal class ClassMatcher(
         result: ConditionalEmitter,
         filtered: Boolean,
     ): Transformer = ClassTransformer(declarations, elements, result, filtered)
+
+    override fun toString(): String = elements.joinToString(prefix = "{", postfix = "}")
 }
 
 internal class ClassTransformer(
@@ -221,6 +287,17 @@ internal class ClassTransformer(
             transformers[it].transform(order, phrase, start, bindings)
         }
 
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean =
+        tree.tryMatch(phrase[start.wordIndex], start.segmentIndex).all {
+            transformers[it].transformEach(order, phrase, start, bindings, sink)
+        }
+
     override fun toString(): String = transformers.joinToString(
         prefix = "{",
         postfix = "}",
@@ -18,6 +18,17 @@ object BetweenWordsMatcher : SimpleMatcher() {
         } else emptyList()
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val (endWord, endIndex) = end
+        return if (endWord > 0 && endIndex == 0) {
+            listOf(PhraseMatchEnd(PhraseIndex(endWord - 1, phrase[endWord - 1].length), bindings))
+        } else emptyList()
+    }
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = this
@@ -28,4 +39,6 @@ object BetweenWordsMatcher : SimpleMatcher() {
 object BetweenWordsEmitter : IndependentEmitter {
     override fun result(): UnboundResult =
         UnboundResult.fromPhrase(Phrase(StandardWord.EMPTY, StandardWord.EMPTY))
+
+    override fun toString(): String = "$$"
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.meamoria.lexurgy.sc.element
 import com.meamoria.lexurgy.word.Phrase
 import com.meamoria.lexurgy.word.PhraseIndex
 import com.meamoria.lexurgy.sc.*
+import com.meamoria.lexurgy.word.Segment
+import com.meamoria.lexurgy.word.Word
 import com.meamoria.lexurgy.word.WordLevel
 
 class CaptureMatcher(
@@ -16,7 +18,7 @@ class CaptureMatcher(
         bindings: Bindings,
         partial: Boolean,
     ): List<PhraseMatchEnd> =
-        if (number in bindings.captures) {
+        if (bindings.hasCapture(number)) {
             throw LscReboundCapture(number)
         } else {
             element.claim(phrase, start, bindings, partial).map { end ->
@@ -33,6 +35,53 @@ class CaptureMatcher(
             }
         }
 
+    override fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean =
+        if (bindings.hasCapture(number)) {
+            throw LscReboundCapture(number)
+        } else {
+            element.claimEach(phrase, start, bindings) { end ->
+                val capture = phrase.slice(start, end.index)
+                sink(
+                    end.replaceBindings(
+                        end.returnBindings.bindCapture(
+                            number,
+                            Capture(
+                                element,
+                                capture.fullyReversedIf(isReversed)
+                            )
+                        )
+                    )
+                )
+            }
+        }
+
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        if (bindings.hasCapture(number)) {
+            throw LscReboundCapture(number)
+        } else {
+            element.claimBackward(phrase, end, bindings).map { start ->
+                val capture = phrase.slice(start.index, end)
+                start.replaceBindings(
+                    start.returnBindings.bindCapture(
+                        number,
+                        Capture(
+                            element,
+                            capture.fullyReversedIf(isReversed)
+                        )
+                    )
+                )
+            }
+        }
+
     override fun length(bindings: Bindings): Int? = element.length(bindings)
 
     override fun reversed(): Matcher =
@@ -58,23 +107,45 @@ class CaptureTransformer(
         start: PhraseIndex,
         bindings: Bindings
     ): List<UnboundTransformation> =
-        if (number in bindings.captures) {
+        if (bindings.hasCapture(number)) {
             throw LscReboundCapture(number)
         } else {
             element.transform(order, phrase, start, bindings).filter {
                 it.start.wordIndex == it.end.wordIndex
             }.map { transform ->
-                val capture = Capture(
-                    matcher,
-                    phrase.slice(
-                        transform.start, transform.end
-                    )
-                )
-                transform.replaceBindings(
-                    transform.returnBindings.bindCapture(number, capture)
-                )
+                bindCapture(phrase, transform)
             }
         }
+
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean =
+        if (bindings.hasCapture(number)) {
+            throw LscReboundCapture(number)
+        } else {
+            element.transformEach(order, phrase, start, bindings) { transform ->
+                transform.start.wordIndex != transform.end.wordIndex ||
+                        sink(bindCapture(phrase, transform))
+            }
+        }
+
+    private fun bindCapture(phrase: Phrase, transform: UnboundTransformation): UnboundTransformation {
+        val capture = Capture(
+            matcher,
+            phrase.slice(
+                transform.start, transform.end
+            )
+        )
+        return transform.replaceBindings(
+            transform.returnBindings.bindCapture(number, capture)
+        )
+    }
+
+    override fun toString(): String = "($element)$$number"
 }
 
 class CaptureReferenceMatcher(
@@ -92,26 +163,38 @@ class CaptureReferenceMatcher(
         val capturedPhrase =
             resolve(bindings).matchedPhrase.fullyReversedIf(isReversed)
 
-        val matchEnd = phrase.matchSubPhrase(
-            start, capturedPhrase,
-            if (exact) {
-                { it.segments }
-            } else {
-                { word ->
-                    with(declarations) {
-                        word.segments.map { it.withoutFloatingDiacritics() }
-                    }
-                }
-            }
-        ) ?: return emptyList()
+        val matchEnd = phrase.matchSubPhrase(start, capturedPhrase, segmentExtractor()) ?: return emptyList()
         return listOf(PhraseMatchEnd(matchEnd, bindings))
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val capturedPhrase =
+            resolve(bindings).matchedPhrase.fullyReversedIf(isReversed)
+
+        val matchStart = phrase.matchSubPhraseBackward(end, capturedPhrase, segmentExtractor()) ?: return emptyList()
+        return listOf(PhraseMatchEnd(matchStart, bindings))
+    }
+
     override fun length(bindings: Bindings): Int? =
         resolve(bindings).matcher.length(bindings)
 
+    private fun segmentExtractor(): (Word) -> List<Segment> =
+        if (exact) {
+            { it.segments }
+        } else {
+            { word ->
+                with(declarations) {
+                    word.segments.map { it.withoutFloatingDiacritics() }
+                }
+            }
+        }
+
     private fun resolve(bindings: Bindings): Capture =
-        bindings.captures[number] ?: throw LscUnboundCapture(number)
+        bindings.capture(number) ?: throw LscUnboundCapture(number)
 
     override fun reversed(): Matcher = CaptureReferenceMatcher(
         declarations, number, exact, !isReversed
@@ -126,7 +209,7 @@ class CaptureReferenceEmitter(
 ) : IndependentEmitter {
     override fun result(): UnboundResult =
         UnboundResult.fromPhraseBinder { bindings ->
-            bindings.captures[number]?.matchedPhrase?.toSimple() ?: throw LscUnboundCapture(number)
+            bindings.capture(number)?.matchedPhrase?.toSimple() ?: throw LscUnboundCapture(number)
         }
 
     override fun toString(): String = "$$number"
@@ -139,7 +222,7 @@ class SyllableCaptureReferenceEmitter(
     override fun result(): UnboundResult =
         UnboundResult { bindings ->
             val capturedPhrase =
-                bindings.captures[number]?.matchedPhrase?.removeBoundingBreaks() ?: throw LscUnboundCapture(number)
+                bindings.capture(number)?.matchedPhrase?.removeBoundingBreaks() ?: throw LscUnboundCapture(number)
             ChangeResult(
                 capturedPhrase,
                 capturedPhrase.syllableBreaks(),
@@ -24,8 +24,21 @@ class EmitterMatcher(
         return listOf(PhraseMatchEnd(matchEnd, bindings))
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val emitterResult = emitter.result()
+        val resultPhrase = emitterResult.bind(bindings).phrase.fullyReversedIf(isReversed)
+        val matchStart = phrase.matchSubPhraseBackward(end, resultPhrase) ?: return emptyList()
+        return listOf(PhraseMatchEnd(matchStart, bindings))
+    }
+
     override fun length(bindings: Bindings): Int =
         emitter.result().bind(bindings).phrase.words.sumOf { it.length }
 
     override fun reversed(): Matcher = EmitterMatcher(emitter, !isReversed)
+
+    override fun toString(): String = if (isReversed) "reversed($emitter)" else "$emitter"
 }
\ No newline at end of file
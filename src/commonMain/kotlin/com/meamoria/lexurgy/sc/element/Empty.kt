@@ -15,6 +15,13 @@ object EmptyMatcher : SimpleMatcher() {
     ): List<PhraseMatchEnd> =
         listOf(PhraseMatchEnd(start, bindings))
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        listOf(PhraseMatchEnd(end, bindings))
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = this
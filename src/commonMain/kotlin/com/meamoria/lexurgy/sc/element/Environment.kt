@@ -25,6 +25,37 @@ class EnvironmentMatcher(
         }
     }
 
+    override fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean =
+        element.claimEach(phrase, start, bindings) { claimEnd ->
+            environment.check(
+                phrase, start,
+                claimEnd.index, claimEnd.returnBindings,
+            )?.let {
+                sink(claimEnd.updateBindings(it))
+            } ?: true
+        }
+
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val claimStarts = element.claimBackward(phrase, end, bindings)
+        return claimStarts.mapNotNull { claimStart ->
+            environment.checkBackward(
+                phrase, claimStart.index,
+                end, claimStart.returnBindings,
+            )?.let {
+                claimStart.updateBindings(it)
+            }
+        }
+    }
+
     override fun length(bindings: Bindings): Int? = element.length(bindings)
 
     override fun reversed(): Matcher =
@@ -59,6 +90,22 @@ class EnvironmentTransformer(
         }
     }
 
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean =
+        element.transformEach(order, phrase, start, bindings) { transformation ->
+            environment.check(
+                phrase, start,
+                transformation.end, transformation.returnBindings
+            )?.let {
+                sink(transformation.updateBindings(it))
+            } ?: true
+        }
+
     override fun toString(): String =
         "$element$environment"
 }
@@ -72,27 +119,39 @@ class EnvironmentTransformer(
  */
 class CompoundEnvironment(val positive: List<Environment>, val negative: List<Environment>) {
 
-    private val realPositive =
-        if (positive.isEmpty()) listOf(Environment(EmptyMatcher, EmptyMatcher))
-        else positive.map { it.beforeReversed() }
-
-    private val realNegative = negative.map { it.beforeReversed() }
+    private val realPositive = positive.ifEmpty { listOf(Environment(EmptyMatcher, EmptyMatcher)) }
 
     fun check(
         phrase: Phrase,
         matchStart: PhraseIndex,
         matchEnd: PhraseIndex,
         bindings: Bindings,
+    ): Bindings? = check(bindings) { environment, environmentBindings ->
+        environment.check(phrase, matchStart, matchEnd, environmentBindings)
+    }
+
+    /**
+     * Like ``check``, for a match that was found going backwards; the
+     * environment is checked from the end of the match first.
+     */
+    fun checkBackward(
+        phrase: Phrase,
+        matchStart: PhraseIndex,
+        matchEnd: PhraseIndex,
+        bindings: Bindings,
+    ): Bindings? = check(bindings) { environment, environmentBindings ->
+        environment.checkBackward(phrase, matchStart, matchEnd, environmentBindings)
+    }
+
+    private inline fun check(
+        bindings: Bindings,
+        checkEnvironment: (Environment, Bindings) -> Bindings?,
     ): Bindings? {
         val positiveBindings = realPositive.firstNotNullOfOrNull { environment ->
-            environment.check(
-                phrase, matchStart, matchEnd, bindings
-            )
+            checkEnvironment(environment, bindings)
         } ?: return null
-        for (environment in realNegative) {
-            environment.check(
-                phrase, matchStart, matchEnd, positiveBindings
-            )?.let { return null }
+        for (environment in negative) {
+            checkEnvironment(environment, positiveBindings)?.let { return null }
         }
         return positiveBindings
     }
@@ -121,22 +180,30 @@ class Environment(val before: Matcher, val after: Matcher) {
         matchEnd: PhraseIndex,
         bindings: Bindings,
     ): Bindings? {
-        val reversedPhrase = phrase.fullyReversed()
-        val beforeEnd = before.claim(
-            reversedPhrase, phrase.reversedIndex(matchStart), bindings
-        )
+        val beforeEnd = before.claimBackward(phrase, matchStart, bindings)
         if (beforeEnd.isEmpty()) return null
-        val afterEnd = after.claim(
+        val afterEnd = after.firstClaim(
             phrase, matchEnd, beforeEnd.first().returnBindings
-        )
-        if (afterEnd.isEmpty()) return null
-        return afterEnd.first().returnBindings
+        ) ?: return null
+        return afterEnd.returnBindings
     }
 
-    fun beforeReversed(): Environment = Environment(before.reversed(), after)
+    fun checkBackward(
+        phrase: Phrase,
+        matchStart: PhraseIndex,
+        matchEnd: PhraseIndex,
+        bindings: Bindings,
+    ): Bindings? {
+        val afterEnd = after.firstClaim(phrase, matchEnd, bindings) ?: return null
+        val beforeEnd = before.claimBackward(
+            phrase, matchStart, afterEnd.returnBindings
+        )
+        if (beforeEnd.isEmpty()) return null
+        return beforeEnd.first().returnBindings
+    }
 
     fun reversed(): Environment =
         Environment(after.reversed(), before.reversed())
 
     override fun toString(): String = "$before _ $after"
-}
\ No newline at end of file
+}
@@ -12,43 +12,63 @@ class IndependentSequenceTransformer(
         order: Int,
         phrase: Phrase,
         start: PhraseIndex,
-        bindings: Bindings
+        bindings: Bindings,
     ): List<UnboundTransformation> =
         matcher.claim(phrase, start, bindings).map { claimEnd ->
-            val transformationBits = emitter.resultBits(
-                order, start, claimEnd
-            )
+            transformation(order, phrase, start, claimEnd)
+        }
 
-            val unboundResult = UnboundResult { bindings ->
-                val results = transformationBits.map { it.result.bind(bindings) }
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean =
+        matcher.claimEach(phrase, start, bindings) { claimEnd ->
+            sink(transformation(order, phrase, start, claimEnd))
+        }
 
-                val resultPhrase = phrase.slice(start, claimEnd.index).recoverStructure(
-                    Phrase.fromSubPhrases(results.map { it.phrase }),
-                    exceptSyllableBreaks = claimEnd.matchedSyllableBreaks.map {
-                        it - start
-                    },
-                )
-                val resultEmitsSyllableBreaks = results.sequenceEmitsSyllableBreaks()
-                val resultSyllableFeatureChanges = results.sequenceSyllableFeatureChanges()
+    private fun transformation(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        claimEnd: PhraseMatchEnd,
+    ): UnboundTransformation {
+        val transformationBits = emitter.resultBits(
+            order, start, claimEnd
+        )
 
-                ChangeResult(
-                    resultPhrase,
-                    resultEmitsSyllableBreaks,
-                    resultSyllableFeatureChanges,
-                )
-            }
+        val unboundResult = UnboundResult { bindings ->
+            val results = transformationBits.map { it.result.bind(bindings) }
 
-            UnboundTransformation(
-                order,
-                start,
-                claimEnd.index,
-                unboundResult,
-                claimEnd.returnBindings,
-                transformationBits,
-                removesSyllableBreaks = claimEnd.matchedSyllableBreaks,
+            val resultPhrase = phrase.slice(start, claimEnd.index).recoverStructure(
+                Phrase.fromSubPhrases(results.map { it.phrase }),
+                exceptSyllableBreaks = claimEnd.matchedSyllableBreaks.map {
+                    it - start
+                },
+            )
+            val resultEmitsSyllableBreaks = results.sequenceEmitsSyllableBreaks()
+            val resultSyllableFeatureChanges = results.sequenceSyllableFeatureChanges()
+
+            ChangeResult(
+                resultPhrase,
+                resultEmitsSyllableBreaks,
+                resultSyllableFeatureChanges,
             )
         }
 
+        return UnboundTransformation(
+            order,
+            start,
+            claimEnd.index,
+            unboundResult,
+            claimEnd.returnBindings,
+            transformationBits,
+            removesSyllableBreaks = claimEnd.matchedSyllableBreaks,
+        )
+    }
+
     private fun SequenceEmitter.resultBits(
         order: Int,
         start: PhraseIndex,
@@ -68,4 +88,6 @@ class IndependentSequenceTransformer(
                 )
             }
         }
+
+    override fun toString(): String = "$matcher => $emitter"
 }
\ No newline at end of file
@@ -12,33 +12,53 @@ class IndependentTransformer(
         order: Int,
         phrase: Phrase,
         start: PhraseIndex,
-        bindings: Bindings
+        bindings: Bindings,
     ): List<UnboundTransformation> =
         matcher.claim(phrase, start, bindings).map { claimEnd ->
-            val unboundResult = UnboundResult { bindings ->
-                val result = emitter.result().bind(bindings)
-                val resultPhrase = phrase.slice(start, claimEnd.index).recoverStructure(
-                    result.phrase,
-                    exceptSyllableBreaks = claimEnd.matchedSyllableBreaks.map {
-                        it - start
-                    }
-                )
-                ChangeResult(
-                    resultPhrase,
-                    result.emitsSyllableBreaks,
-                    result.syllableFeatureChanges,
-                )
-            }
+            transformation(order, phrase, start, claimEnd)
+        }
+
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean =
+        matcher.claimEach(phrase, start, bindings) { claimEnd ->
+            sink(transformation(order, phrase, start, claimEnd))
+        }
 
-            UnboundTransformation(
-                order,
-                start,
-                claimEnd.index,
-                unboundResult,
-                claimEnd.returnBindings,
-                removesSyllableBreaks = claimEnd.matchedSyllableBreaks,
+    private fun transformation(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        claimEnd: PhraseMatchEnd,
+    ): UnboundTransformation {
+        val unboundResult = UnboundResult { bindings ->
+            val result = emitter.result().bind(bindings)
+            val resultPhrase = phrase.slice(start, claimEnd.index).recoverStructure(
+                result.phrase,
+                exceptSyllableBreaks = claimEnd.matchedSyllableBreaks.map {
+                    it - start
+                }
+            )
+            ChangeResult(
+                resultPhrase,
+                result.emitsSyllableBreaks,
+                result.syllableFeatureChanges,
             )
         }
 
+        return UnboundTransformation(
+            order,
+            start,
+            claimEnd.index,
+            unboundResult,
+            claimEnd.returnBindings,
+            removesSyllableBreaks = claimEnd.matchedSyllableBreaks,
+        )
+    }
+
     override fun toString(): String = "$matcher => $emitter"
 }
\ No newline at end of file
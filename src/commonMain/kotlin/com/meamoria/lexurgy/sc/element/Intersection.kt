@@ -22,6 +22,19 @@ class IntersectionMatcher(
         ) { it }
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val matchStarts = initialMatcher.claimBackward(
+            phrase, end, bindings
+        )
+        return filterIntersection(
+            matchVerifiers, phrase, end, bindings, matchStarts, backward = true
+        ) { it }
+    }
+
     override fun length(bindings: Bindings): Int? = initialMatcher.length(bindings)
 
     override fun reversed(): Matcher = IntersectionMatcher(
@@ -64,6 +77,23 @@ class IntersectionTransformer(
         ) { it.toMatchEnd() }
     }
 
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean {
+        val verifier = IntersectionVerifier(matchVerifiers, phrase, start, bindings)
+        return transformer.transformEach(order, phrase, start, bindings) { transformation ->
+            if (transformation.start.wordIndex != transformation.end.wordIndex) {
+                true
+            } else {
+                verifier.verify(transformation, transformation.end)?.let(sink) ?: true
+            }
+        }
+    }
+
     override fun toString(): String =
         "($transformer)&${matchVerifiers.joinToString("&")}"
 }
@@ -74,43 +104,70 @@ data class MatchVerifier(val matcher: Matcher, val negated: Boolean) {
     override fun toString(): String = "${if (negated) "!" else ""}$matcher"
 }
 
+/**
+ * Keeps the possible matches that all the verifiers agree with.
+ * If ``backward`` is true, the matches go backward from ``start``
+ * and the verifiers are claimed backward too.
+ */
 fun <T : WithBindings<T>> filterIntersection(
     elements: List<MatchVerifier>,
     phrase: Phrase,
     start: PhraseIndex,
     initialBindings: Bindings,
     possibleMatches: List<T>,
+    backward: Boolean = false,
     matchEndTransformer: (T) -> PhraseMatchEnd,
 ): List<T> {
-    var matchEnds = possibleMatches
-    for ((element, negated) in elements) {
-        if (element is LengthHintedMatcher) {
-            matchEnds = matchEnds.mapNotNull { matchEnd ->
-                val transformed = matchEndTransformer(matchEnd)
-                val elementMatchEnd = element.claim(
-                    phrase, start, transformed.index, initialBindings
-                )
-                if (negated) {
-                    if (elementMatchEnd == null) matchEnd else null
-                } else {
-                    elementMatchEnd?.let { matchEnd.updateBindings(it) }
-                }
+    val verifier = IntersectionVerifier(elements, phrase, start, initialBindings, backward)
+    return possibleMatches.mapNotNull { verifier.verify(it, matchEndTransformer(it).index) }
+}
+
+/**
+ * Checks possible matches against all the verifiers one match at a time,
+ * so that they can be checked as they're found. Verifiers that can't
+ * check a single match end are claimed once, the first time a match
+ * gets as far as them.
+ */
+class IntersectionVerifier(
+    private val elements: List<MatchVerifier>,
+    private val phrase: Phrase,
+    private val start: PhraseIndex,
+    private val initialBindings: Bindings,
+    private val backward: Boolean = false,
+) {
+    private val claimedEnds = arrayOfNulls<Map<PhraseIndex, Bindings>>(elements.size)
+
+    /**
+     * Returns the match with the verifiers' bindings added,
+     * or null if any of them disagree with it
+     */
+    fun <T : WithBindings<T>> verify(possibleMatch: T, matchEnd: PhraseIndex): T? {
+        var match = possibleMatch
+        for ((i, verifier) in elements.withIndex()) {
+            val (element, negated) = verifier
+            val elementBindings = if (element !is LengthHintedMatcher) {
+                claimedEnds(i, element)[matchEnd]
+            } else if (backward) {
+                element.claimBackward(phrase, start, matchEnd, initialBindings)
+            } else {
+                element.claim(phrase, start, matchEnd, initialBindings)
             }
-        } else {
-            val elementMatchEnds = element.claim(phrase, start, initialBindings)
-            val elementMatchEndsMap = elementMatchEnds.associate { it.index to it.returnBindings }
-            matchEnds = matchEnds.mapNotNull { matchEnd ->
-                val transformed = matchEndTransformer(matchEnd)
-                if (negated) {
-                    if (transformed.index in elementMatchEndsMap) null else matchEnd
-                } else {
-                    elementMatchEndsMap[transformed.index]?.let {
-                        matchEnd.updateBindings(it)
-                    }
-                }
+            if (negated) {
+                if (elementBindings != null) return null
+            } else {
+                match = match.updateBindings(elementBindings ?: return null)
             }
-            if (matchEnds.isEmpty()) return emptyList()
         }
+        return match
     }
-    return matchEnds
-}
\ No newline at end of file
+
+    private fun claimedEnds(i: Int, element: Matcher): Map<PhraseIndex, Bindings> =
+        claimedEnds[i] ?: run {
+            val elementMatchEnds = if (backward) {
+                element.claimBackward(phrase, start, initialBindings)
+            } else {
+                element.claim(phrase, start, initialBindings)
+            }
+            elementMatchEnds.associate { it.index to it.returnBindings }
+        }.also { claimedEnds[i] = it }
+}
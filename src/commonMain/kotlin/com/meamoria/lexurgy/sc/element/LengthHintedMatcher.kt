@@ -15,4 +15,16 @@ interface LengthHintedMatcher {
         expectedEnd: PhraseIndex,
         bindings: Bindings
     ): Bindings?
+
+    /**
+     * The backward counterpart of the length-hinted ``claim``,
+     * for a match that finishes at ``end`` and is expected to
+     * start at ``expectedStart``
+     */
+    fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        expectedStart: PhraseIndex,
+        bindings: Bindings
+    ): Bindings?
 }
\ No newline at end of file
@@ -17,6 +17,34 @@ interface Matcher {
         partial: Boolean = false,
     ): List<PhraseMatchEnd>
 
+    /**
+     * Like ``claim`` (without partial matches), but passes the end
+     * indices to ``sink`` one at a time, in the same order, rather than
+     * collecting them into a list. Stops as soon as ``sink`` returns false.
+     * Returns false if it was stopped early, true otherwise.
+     */
+    fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean = claim(phrase, start, bindings).all(sink)
+
+    /**
+     * Tries to match segments in the specified phrase going backwards,
+     * so that the match finishes at the specified index. Returns the
+     * start indices of all possible matches.
+     *
+     * This is how lookbehind is matched. The results (and their order)
+     * are the same as claiming ``reversed()`` on the fully reversed
+     * phrase, but without building the reversed phrase.
+     */
+    fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd>
+
     /**
      * Returns the number of segments this matcher will match if successful,
      * given the specified bindings.
@@ -53,4 +81,35 @@ interface Matcher {
 
     fun <T> List<T>.checkTooManyOptions(): List<T> =
         checkTooManyOptions(this@Matcher, this)
-}
\ No newline at end of file
+}
+
+/**
+ * Whether the matcher matches at all at the specified index
+ */
+fun Matcher.matchesAt(phrase: Phrase, start: PhraseIndex, bindings: Bindings): Boolean =
+    !claimEach(phrase, start, bindings) { false }
+
+/**
+ * The end ``claim`` would put first, without looking for any of the others
+ */
+fun Matcher.firstClaim(phrase: Phrase, start: PhraseIndex, bindings: Bindings): PhraseMatchEnd? {
+    var first: PhraseMatchEnd? = null
+    claimEach(phrase, start, bindings) {
+        first = it
+        false
+    }
+    return first
+}
+
+/**
+ * Collects the ends from ``claimEach`` into a list, for matchers whose
+ * ``claim`` is written in terms of ``claimEach``
+ */
+internal fun Matcher.collectClaims(phrase: Phrase, start: PhraseIndex, bindings: Bindings): List<PhraseMatchEnd> {
+    var ends: MutableList<PhraseMatchEnd>? = null
+    claimEach(phrase, start, bindings) { end ->
+        val list = ends ?: mutableListOf<PhraseMatchEnd>().also { ends = it }
+        list.add(end)
+    }
+    return ends ?: emptyList()
+}
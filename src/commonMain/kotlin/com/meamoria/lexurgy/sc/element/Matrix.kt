@@ -33,6 +33,27 @@ class MatrixMatcher(
             } else emptyList()
         }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        with(declarations) {
+            val word = phrase[end.wordIndex]
+            val index = end.segmentIndex
+            val boundMatrix = matrix.bindVariables(bindings)
+            if (index > 0) {
+                word[index - 1].matches(boundMatrix, bindings)?.let {
+                    listOf(
+                        PhraseMatchEnd(
+                            end.copy(segmentIndex = index - 1),
+                            it
+                        )
+                    )
+                } ?: emptyList()
+            } else emptyList()
+        }
+
     override fun length(bindings: Bindings): Int = 1
 
     override fun reversed(): Matcher = this
@@ -103,6 +124,27 @@ class SyllableMatrixMatcher(
         }
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val word = phrase[end.wordIndex]
+        val index = end.segmentIndex
+        if (index == 0) return emptyList()
+        with(declarations) {
+            val boundMatrix = matrix.bindVariables(bindings)
+            return word.modifiersAt(index - 1).toMatrix().matches(boundMatrix, bindings)?.let {
+                listOf(
+                    PhraseMatchEnd(
+                        end.copy(segmentIndex = index - 1),
+                        it
+                    )
+                )
+            } ?: emptyList()
+        }
+    }
+
     override fun length(bindings: Bindings): Int = 1
 
     override fun claim(
@@ -123,6 +165,24 @@ class SyllableMatrixMatcher(
         }
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        expectedStart: PhraseIndex,
+        bindings: Bindings
+    ): Bindings? {
+        if (expectedStart.wordIndex != end.wordIndex) return null
+        val word = phrase[end.wordIndex]
+        val index = end.segmentIndex
+        val expectedStartIsPastCurrentSyllable =
+            word.syllableBreaks.any { it in ((expectedStart.segmentIndex + 1) until index) }
+        if (expectedStartIsPastCurrentSyllable) return null
+        with(declarations) {
+            val boundMatrix = matrix.bindVariables(bindings)
+            return word.modifiersAt(index - 1).toMatrix().matches(boundMatrix, bindings)
+        }
+    }
+
     override fun reversed(): Matcher = this
 
     override fun toString(): String = matrix.toString()
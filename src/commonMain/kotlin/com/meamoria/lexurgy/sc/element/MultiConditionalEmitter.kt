@@ -34,4 +34,6 @@ class MultiConditionalEmitter(
         original: Word,
     ): UnboundResult =
         result(matcher, Phrase(original))
+
+    override fun toString(): String = elements.joinToString(" ")
 }
\ No newline at end of file
@@ -20,13 +20,26 @@ class NegatedLookaroundMatcher(val matcher: Matcher) : SimpleMatcher() {
         val index = start.segmentIndex
         return when {
             index >= word.length -> emptyList()
-            matcher.claim(phrase, start, bindings).isEmpty() ->
+            !matcher.matchesAt(phrase, start, bindings) ->
                 listOf(PhraseMatchEnd(start, bindings))
 
             else -> emptyList()
         }
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        when {
+            end.segmentIndex <= 0 -> emptyList()
+            matcher.claimBackward(phrase, end, bindings).isEmpty() ->
+                listOf(PhraseMatchEnd(end, bindings))
+
+            else -> emptyList()
+        }
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = NegatedLookaroundMatcher(matcher.reversed())
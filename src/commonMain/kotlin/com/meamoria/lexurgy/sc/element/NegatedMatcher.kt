@@ -19,13 +19,31 @@ class NegatedMatcher(val matcher: Matcher) : SimpleMatcher() {
         val index = start.segmentIndex
         return when {
             index >= word.length -> emptyList()
-            matcher.claim(phrase, start, bindings).isEmpty() ->
+            !matcher.matchesAt(phrase, start, bindings) ->
                 listOf(PhraseMatchEnd(start.copy(segmentIndex = index + 1), bindings))
 
             else -> emptyList()
         }
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        if (matcher.length(bindings) != 1) {
+            throw MultipleSegmentNegation(matcher)
+        }
+        val index = end.segmentIndex
+        return when {
+            index <= 0 -> emptyList()
+            matcher.claimBackward(phrase, end, bindings).isEmpty() ->
+                listOf(PhraseMatchEnd(end.copy(segmentIndex = index - 1), bindings))
+
+            else -> emptyList()
+        }
+    }
+
     override fun length(bindings: Bindings): Int =
         if (matcher.length(bindings) == 1) 1 else throw MultipleSegmentNegation(matcher)
 
@@ -15,6 +15,12 @@ object NeverMatcher : SimpleMatcher() {
         partial: Boolean,
     ): List<PhraseMatchEnd> = emptyList()
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> = emptyList()
+
     override fun length(bindings: Bindings): Int? = null
 
     override fun reversed(): Matcher = this
@@ -15,6 +15,7 @@ class RepeaterMatcher(
         bindings: Bindings,
         partial: Boolean,
     ): List<PhraseMatchEnd> {
+        if (!partial) return collectClaims(phrase, start, bindings)
         val result = mutableListOf(listOf(PhraseMatchEnd(start, bindings)))
         while (true) {
             val newResult = result.last().filter { !it.isPartial }.flatMap { end ->
@@ -40,6 +41,64 @@ class RepeaterMatcher(
         }
     }
 
+    // The ends with the most repetitions come first, so every level has
+    // to be found before any of them can be passed on. Levels are only
+    // allocated once they turn out to have something in them.
+    override fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean {
+        val initial = PhraseMatchEnd(start, bindings)
+        var levels: MutableList<List<PhraseMatchEnd>>? = null
+        var last = 0
+        while (true) {
+            val previousLevel = levels?.get(last - 1)
+            var newLevel: MutableList<PhraseMatchEnd>? = null
+            val previousCount = previousLevel?.size ?: 1
+            for (i in 0 until previousCount) {
+                val end = previousLevel?.get(i) ?: initial
+                element.claimEach(phrase, end.index, end.returnBindings) { next ->
+                    val level = newLevel ?: mutableListOf<PhraseMatchEnd>().also { newLevel = it }
+                    level.add(next.precededBy(end))
+                    checkTooManyOptions(this, level.size)
+                    true
+                }
+            }
+            val found = newLevel ?: break
+            (levels ?: mutableListOf<List<PhraseMatchEnd>>().also { levels = it }).add(found)
+            last++
+            if (type.maxReps != null && last + 1 > type.maxReps!!) break
+        }
+        for (reps in last downTo type.minReps) {
+            if (reps == 0) return sink(initial)
+            for (end in levels!![reps - 1]) {
+                if (!sink(end)) return false
+            }
+        }
+        return true
+    }
+
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val result = mutableListOf(listOf(PhraseMatchEnd(end, bindings)))
+        while (true) {
+            val newResult = result.last().flatMap { start ->
+                element.claimBackward(
+                    phrase, start.index, start.returnBindings
+                ).map { it.precededBy(start) }
+            }.checkTooManyOptions()
+            if (newResult.isEmpty()) break
+            result += newResult
+            if (type.maxReps != null && result.size > type.maxReps!!) break
+        }
+        return result.drop(type.minReps).reversed().flatten()
+    }
+
     override fun length(bindings: Bindings): Int? = null
 
     override fun reversed(): Matcher =
@@ -80,28 +139,46 @@ class RepeaterTransformer(
         phrase: Phrase,
         start: PhraseIndex,
         bindings: Bindings
-    ): List<UnboundTransformation> {
-        val resultBits = mutableListOf(listOf(emptyList<UnboundTransformation>()))
+    ): List<UnboundTransformation> = collectTransformations(order, phrase, start, bindings)
+
+    // Like RepeaterMatcher.claimEach, every level has to be found before
+    // the first transformation is known, but the transformations only get
+    // put together for the paths that are actually passed on
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean {
+        val levels = mutableListOf<List<SubTransformations?>>(listOf(null))
         while (true) {
-            val newResultBits = resultBits.last().flatMap { prev ->
-                transformer.transform(
+            val newLevel = mutableListOf<SubTransformations>()
+            for (prev in levels.last()) {
+                transformer.transformEach(
                     order, phrase,
-                    prev.lastOrNull()?.end ?: start,
-                    prev.lastOrNull()?.returnBindings ?: bindings
-                ).map {
-                    prev + it
+                    prev?.transformation?.end ?: start,
+                    prev?.transformation?.returnBindings ?: bindings
+                ) {
+                    newLevel += SubTransformations(prev, it)
+                    checkTooManyOptions(this, newLevel.size)
+                    true
                 }
-            }.checkTooManyOptions()
-            if (newResultBits.isEmpty()) break
-            resultBits += newResultBits
-            if (type.maxReps != null && resultBits.size > type.maxReps!!) break
+            }
+            if (newLevel.isEmpty()) break
+            levels += newLevel
+            if (type.maxReps != null && levels.size > type.maxReps!!) break
         }
 
-        return resultBits.drop(type.minReps).reversed().flatten().map {
-            UnboundTransformation.fromSubTransformations(
-                order, start, bindings, it
-            )
+        for (level in levels.drop(type.minReps).asReversed()) {
+            for (path in level) {
+                val transformation = UnboundTransformation.fromSubTransformations(
+                    order, start, bindings, path?.toList() ?: emptyList()
+                )
+                if (!sink(transformation)) return false
+            }
         }
+        return true
     }
 
     override fun toString(): String = "($transformer)${type.string}"
@@ -15,6 +15,7 @@ class SequenceMatcher(
         bindings: Bindings,
         partial: Boolean,
     ): List<PhraseMatchEnd> {
+        if (!partial) return collectClaims(phrase, start, bindings)
         var ends = listOf(PhraseMatchEnd(start, bindings))
         for (element in elements) {
             val newEnds = ends.filter { !it.isPartial }.flatMap { end ->
@@ -32,6 +33,51 @@ class SequenceMatcher(
         return ends
     }
 
+    // Goes depth first, which finds the ends in the same order as
+    // the breadth-first search in claim
+    override fun claimEach(
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean {
+        val optionCounts = IntArray(elements.size)
+        return claimEachFrom(0, phrase, PhraseMatchEnd(start, bindings), optionCounts, sink)
+    }
+
+    private fun claimEachFrom(
+        elementNumber: Int,
+        phrase: Phrase,
+        previous: PhraseMatchEnd,
+        optionCounts: IntArray,
+        sink: (PhraseMatchEnd) -> Boolean,
+    ): Boolean {
+        if (elementNumber == elements.size) return sink(previous)
+        return elements[elementNumber].claimEach(
+            phrase, previous.index, previous.returnBindings
+        ) { end ->
+            checkTooManyOptions(this, ++optionCounts[elementNumber])
+            claimEachFrom(elementNumber + 1, phrase, end.precededBy(previous), optionCounts, sink)
+        }
+    }
+
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        var starts = listOf(PhraseMatchEnd(end, bindings))
+        for (element in elements.asReversed()) {
+            starts = starts.flatMap { start ->
+                element.claimBackward(
+                    phrase, start.index, start.returnBindings
+                ).map { it.precededBy(start) }
+            }.checkTooManyOptions()
+            if (starts.isEmpty()) return emptyList()
+        }
+        return starts
+    }
+
     override fun length(bindings: Bindings): Int? =
         elements.sumOf { it.length(bindings) ?: return null }
 
@@ -115,24 +161,47 @@ class SequenceTransformer(
         phrase: Phrase,
         start: PhraseIndex,
         bindings: Bindings,
-    ): List<UnboundTransformation> {
-        var resultBits = listOf(emptyList<UnboundTransformation>())
-        for (element in elements) {
-            resultBits = resultBits.flatMap { prev ->
-                element.transform(
-                    order, phrase,
-                    prev.lastOrNull()?.end ?: start,
-                    prev.lastOrNull()?.returnBindings ?: bindings,
-                ).map {
-                    prev + it
-                }
-            }.checkTooManyOptions()
-            if (resultBits.isEmpty()) return emptyList()
-        }
+    ): List<UnboundTransformation> = collectTransformations(order, phrase, start, bindings)
+
+    // Depth first, like SequenceMatcher.claimEach, so the first
+    // transformation is found without working out all the others
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean {
+        val optionCounts = IntArray(elements.size)
+        return transformEachFrom(0, order, phrase, start, bindings, null, optionCounts, sink)
+    }
 
-        return resultBits.map {
-            UnboundTransformation.fromSubTransformations(
-                order, start, bindings, it
+    private fun transformEachFrom(
+        elementNumber: Int,
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        previous: SubTransformations?,
+        optionCounts: IntArray,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean {
+        if (elementNumber == elements.size) {
+            return sink(
+                UnboundTransformation.fromSubTransformations(
+                    order, start, bindings, previous?.toList() ?: emptyList()
+                )
+            )
+        }
+        return elements[elementNumber].transformEach(
+            order, phrase,
+            previous?.transformation?.end ?: start,
+            previous?.transformation?.returnBindings ?: bindings,
+        ) {
+            checkTooManyOptions(this, ++optionCounts[elementNumber])
+            transformEachFrom(
+                elementNumber + 1, order, phrase, start, bindings,
+                SubTransformations(previous, it), optionCounts, sink,
             )
         }
     }
@@ -15,17 +15,37 @@ class SimpleConditionalTransformer(
         bindings: Bindings,
     ): List<UnboundTransformation> =
         matcher.claim(phrase, start, bindings).map { claimEnd ->
-            val claim = phrase.slice(start, claimEnd.index)
-            val result = emitter.result(matcher, claim)
-            UnboundTransformation(
-                order,
-                start,
-                claimEnd.index,
-                result,
-                claimEnd.returnBindings,
-                removesSyllableBreaks = claimEnd.matchedSyllableBreaks,
-            )
+            transformation(order, phrase, start, claimEnd)
         }
 
+    override fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean =
+        matcher.claimEach(phrase, start, bindings) { claimEnd ->
+            sink(transformation(order, phrase, start, claimEnd))
+        }
+
+    private fun transformation(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        claimEnd: PhraseMatchEnd,
+    ): UnboundTransformation {
+        val claim = phrase.slice(start, claimEnd.index)
+        val result = emitter.result(matcher, claim)
+        return UnboundTransformation(
+            order,
+            start,
+            claimEnd.index,
+            result,
+            claimEnd.returnBindings,
+            removesSyllableBreaks = claimEnd.matchedSyllableBreaks,
+        )
+    }
+
     override fun toString(): String = "$matcher => $emitter"
 }
\ No newline at end of file
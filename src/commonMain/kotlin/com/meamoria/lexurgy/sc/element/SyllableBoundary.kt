@@ -20,6 +20,13 @@ object SyllableBoundaryMatcher : SimpleMatcher() {
             emptyList()
         }
 
+    // Syllable boundaries look the same from either side
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> = claim(phrase, end, bindings)
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = this
@@ -55,6 +62,12 @@ object NegatedSyllableBoundaryMatcher : SimpleMatcher() {
             )
         }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> = claim(phrase, end, bindings)
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = this
@@ -34,6 +34,33 @@ object SyllableMatcher : SimpleMatcher() {
         ).map { PhraseMatchEnd(start.copy(segmentIndex = it), bindings) }
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val word = phrase[end.wordIndex]
+        if (!word.isSyllabified()) return emptyList()
+        if (word.isEmpty()) return emptyList()
+
+        val index = end.segmentIndex
+        val syllableIndex = word.syllableBreaks.indexOf(index)
+        return listOfNotNull(
+            when {
+                // Match the entire word if it's only one syllable and we're at the end
+                index == word.length && word.numSyllables == 1 -> 0
+                // Match back to the last syllable break if we're at the end
+                index == word.length -> word.syllableBreaks.last()
+                // Fail to match if we're in the middle of a syllable
+                syllableIndex < 0 -> null
+                // Match back to the start of the word if we're at the first syllable break
+                syllableIndex == 0 -> 0
+                // Otherwise, we're at the end of a mid-word syllable; match back to the previous syllable break
+                else -> word.syllableBreaks[syllableIndex - 1]
+            }
+        ).map { PhraseMatchEnd(end.copy(segmentIndex = it), bindings) }
+    }
+
     override fun length(bindings: Bindings): Int? = null
 
     override fun reversed(): Matcher = this
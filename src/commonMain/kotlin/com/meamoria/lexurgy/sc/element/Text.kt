@@ -41,6 +41,26 @@ class SymbolMatcher(val declarations: Declarations, text: Word) :
         ) else emptyList()
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val word = phrase[end.wordIndex]
+        val index = end.segmentIndex
+        val start = index - text.length
+        if (start < 0) return emptyList()
+        val wordSegments = word.sliceSegments(start until index)
+        val matches = with(declarations) {
+            wordSegments.zip(text.segments) { wordSegment, textSegment ->
+                wordSegment.matches(textSegment)
+            }.all { it }
+        }
+        return if (matches) listOf(
+            PhraseMatchEnd(end.copy(segmentIndex = start), bindings)
+        ) else emptyList()
+    }
+
     override fun length(bindings: Bindings): Int = text.length
 
     override fun reversed(): Matcher = SymbolMatcher(declarations, text.reversed())
@@ -136,6 +156,20 @@ class TextMatcher(text: Word) : AbstractTextMatcher(text) {
         )
     }
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> {
+        val matchResult = phrase.matchSubPhraseBackward(end, Phrase(text)) ?: return emptyList()
+        return listOf(
+            PhraseMatchEnd(
+                matchResult,
+                bindings,
+            )
+        )
+    }
+
     override fun length(bindings: Bindings): Int = text.length
 
     override fun reversed(): Matcher = TextMatcher(text.reversed())
@@ -2,8 +2,18 @@ package com.meamoria.lexurgy.sc.element
 
 import com.meamoria.lexurgy.LscUserError
 
+private const val MAX_OPTIONS = 1000
+
 fun <T> checkTooManyOptions(matcher: Any, options: List<T>): List<T> =
-    if (options.size >= 1000) throw LscTooManyOptions(matcher) else options
+    if (options.size >= MAX_OPTIONS) throw LscTooManyOptions(matcher) else options
+
+/**
+ * Like the list version, for matchers that count their options as they
+ * find them rather than collecting them into a list
+ */
+internal fun checkTooManyOptions(matcher: Any, optionCount: Int) {
+    if (optionCount >= MAX_OPTIONS) throw LscTooManyOptions(matcher)
+}
 
 class LscTooManyOptions(val matcher: Any) :
     LscUserError(
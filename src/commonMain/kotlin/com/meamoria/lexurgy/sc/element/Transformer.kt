@@ -12,6 +12,74 @@ interface Transformer {
         bindings: Bindings,
     ): List<UnboundTransformation>
 
+    /**
+     * Like ``transform``, but passes the transformations to ``sink`` one
+     * at a time, in the same order. Stops as soon as ``sink`` returns false.
+     * Returns false if it was stopped early, true otherwise.
+     */
+    fun transformEach(
+        order: Int,
+        phrase: Phrase,
+        start: PhraseIndex,
+        bindings: Bindings,
+        sink: (UnboundTransformation) -> Boolean,
+    ): Boolean = transform(order, phrase, start, bindings).all(sink)
+
     fun <T> List<T>.checkTooManyOptions(): List<T> =
         checkTooManyOptions(this@Transformer, this)
-}
\ No newline at end of file
+}
+
+/**
+ * The transformation ``transform`` would put first, without looking
+ * for any of the others
+ */
+fun Transformer.firstTransformation(
+    order: Int,
+    phrase: Phrase,
+    start: PhraseIndex,
+    bindings: Bindings,
+): UnboundTransformation? {
+    var first: UnboundTransformation? = null
+    transformEach(order, phrase, start, bindings) {
+        first = it
+        false
+    }
+    return first
+}
+
+/**
+ * Collects the transformations from ``transformEach`` into a list, for
+ * transformers whose ``transform`` is written in terms of ``transformEach``
+ */
+internal fun Transformer.collectTransformations(
+    order: Int,
+    phrase: Phrase,
+    start: PhraseIndex,
+    bindings: Bindings,
+): List<UnboundTransformation> {
+    var transformations: MutableList<UnboundTransformation>? = null
+    transformEach(order, phrase, start, bindings) { transformation ->
+        val list = transformations ?: mutableListOf<UnboundTransformation>().also { transformations = it }
+        list.add(transformation)
+    }
+    return transformations ?: emptyList()
+}
+
+/**
+ * The sub-transformations found so far along one path through a sequence
+ * or repeater, linked backwards so that paths can share their beginnings
+ */
+internal class SubTransformations(
+    val previous: SubTransformations?,
+    val transformation: UnboundTransformation,
+) {
+    fun toList(): List<UnboundTransformation> {
+        val result = mutableListOf<UnboundTransformation>()
+        var current: SubTransformations? = this
+        while (current != null) {
+            result += current.transformation
+            current = current.previous
+        }
+        return result.asReversed()
+    }
+}
@@ -9,4 +9,6 @@ class TransformingEmitter(
             val initialResult = initialEmitter.result().bind(bindings)
             transformation.result(NeverMatcher, initialResult.phrase).bind(bindings)
         }
+
+    override fun toString(): String = "$initialEmitter $transformation"
 }
\ No newline at end of file
@@ -41,7 +41,7 @@ data class UnboundTransformation(
 
     override fun toString(): String {
         val tryResult = try {
-            result.bind(Bindings()).phrase.string
+            result.bind(Bindings.EMPTY).phrase.string
         } catch (e: Exception) {
             "<unbound>"
         }
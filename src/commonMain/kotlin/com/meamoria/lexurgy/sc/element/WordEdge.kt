@@ -15,6 +15,15 @@ object WordStartMatcher : SimpleMatcher() {
             listOf(PhraseMatchEnd(start, bindings))
         } else emptyList()
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        if (end.segmentIndex == 0) {
+            listOf(PhraseMatchEnd(end, bindings))
+        } else emptyList()
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = WordEndMatcher
@@ -33,6 +42,15 @@ object WordEndMatcher : SimpleMatcher() {
             listOf(PhraseMatchEnd(start, bindings))
         } else emptyList()
 
+    override fun claimBackward(
+        phrase: Phrase,
+        end: PhraseIndex,
+        bindings: Bindings,
+    ): List<PhraseMatchEnd> =
+        if (end.segmentIndex == phrase[end.wordIndex].length) {
+            listOf(PhraseMatchEnd(end, bindings))
+        } else emptyList()
+
     override fun length(bindings: Bindings): Int = 0
 
     override fun reversed(): Matcher = WordStartMatcher
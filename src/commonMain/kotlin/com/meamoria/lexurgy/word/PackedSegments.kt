@@ -0,0 +1,99 @@
+package com.meamoria.lexurgy.word
+
+/**
+ * A list of segments stored as the ids a ``SegmentInterner`` assigned
+ * them. The segments themselves are only looked up when they're asked
+ * for, and since they come from the interner, equal segments are always
+ * the same object.
+ *
+ * Two packed lists from the same interner are compared by their ids
+ * alone, without looking at the segments.
+ */
+class PackedSegments private constructor(
+    private val ids: IntArray,
+    val interner: SegmentInterner,
+) : AbstractList<Segment>() {
+    override val size: Int
+        get() = ids.size
+
+    override fun get(index: Int): Segment = interner.segment(ids[index])
+
+    /**
+     * The id of the segment at the specified index
+     */
+    fun idAt(index: Int): Int = ids[index]
+
+    // Lists have to hash the same way whatever their implementation,
+    // so this can't just hash the ids, but it only needs doing once.
+    // 0 means it hasn't been worked out yet; threads that race to
+    // work it out just do the same work twice.
+    private var hash: Int = 0
+
+    override fun hashCode(): Int {
+        var result = hash
+        if (result == 0) {
+            result = fold(1) { acc, segment -> 31 * acc + segment.hashCode() }
+            hash = result
+        }
+        return result
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other is PackedSegments && other.interner === interner) return ids.contentEquals(other.ids)
+        return super.equals(other)
+    }
+
+    override fun subList(fromIndex: Int, toIndex: Int): List<Segment> =
+        PackedSegments(ids.copyOfRange(fromIndex, toIndex), interner)
+
+    fun reversed(): PackedSegments = PackedSegments(ids.reversedArray(), interner)
+
+    operator fun plus(other: PackedSegments): PackedSegments? =
+        if (other.interner === interner) PackedSegments(ids + other.ids, interner) else null
+
+    companion object {
+        /**
+         * Joins the specified lists into one packed list, or returns
+         * null unless they're all packed with the same interner
+         */
+        fun concat(parts: List<List<Segment>>): PackedSegments? {
+            val interner = (parts.firstOrNull() as? PackedSegments)?.interner ?: return null
+            var size = 0
+            for (part in parts) {
+                if (part !is PackedSegments || part.interner !== interner) return null
+                size += part.size
+            }
+            val ids = IntArray(size)
+            var offset = 0
+            for (part in parts) {
+                (part as PackedSegments).ids.copyInto(ids, offset)
+                offset += part.size
+            }
+            return PackedSegments(ids, interner)
+        }
+
+        /**
+         * Packs the specified segments, reusing the list if it's already
+         * packed with the same interner. Returns null if the interner
+         * had no room for one of the segments.
+         */
+        fun pack(segments: List<Segment>, interner: SegmentInterner): PackedSegments? {
+            if (segments is PackedSegments && segments.interner === interner) return segments
+            val ids = idsOf(segments, interner)
+            return if (NO_SEGMENT_ID in ids) null else PackedSegments(ids, interner)
+        }
+
+        /**
+         * The ids of the specified segments, without interning them
+         * again if they're already packed with the same interner.
+         * Segments the interner had no room for get ``NO_SEGMENT_ID``.
+         *
+         * If the segments are already packed, this is the array
+         * they're packed in, so it mustn't be modified.
+         */
+        fun idsOf(segments: List<Segment>, interner: SegmentInterner): IntArray =
+            if (segments is PackedSegments && segments.interner === interner) segments.ids
+            else IntArray(segments.size) { interner.idOf(segments[it]) }
+    }
+}
@@ -1,6 +1,8 @@
 package com.meamoria.lexurgy.word
 
-class Phrase(val words: List<Word>) : Iterable<Word> {
+import kotlin.math.max
+
+class Phrase(val words: List<Word>) : Iterable<Word>, SegmentInventory {
     constructor(word: Word) : this(listOf(word))
 
     constructor(vararg words: Word) : this(words.asList())
@@ -80,10 +82,16 @@ class Phrase(val words: List<Word>) : Iterable<Word> {
     }
 
     fun dropUntil(index: PhraseIndex): Phrase =
-        Phrase(
-            listOf(words[index.wordIndex].drop(index.segmentIndex)) +
-                    words.drop(index.wordIndex + 1)
-        )
+        if (index == firstIndex) {
+            this
+        } else {
+            Phrase(
+                ArrayList<Word>(words.size - index.wordIndex).apply {
+                    add(words[index.wordIndex].drop(index.segmentIndex))
+                    addAll(words.subList(index.wordIndex + 1, words.size))
+                }
+            )
+        }
 
     fun slice(start: PhraseIndex, end: PhraseIndex): Phrase =
         if (start.wordIndex == end.wordIndex) {
@@ -92,9 +100,11 @@ class Phrase(val words: List<Word>) : Iterable<Word> {
             )
         } else {
             Phrase(
-                listOf(words[start.wordIndex].drop(start.segmentIndex)) +
-                        words.slice(start.wordIndex + 1 until end.wordIndex) +
-                        words[end.wordIndex].take(end.segmentIndex)
+                ArrayList<Word>(end.wordIndex - start.wordIndex + 1).apply {
+                    add(words[start.wordIndex].drop(start.segmentIndex))
+                    addAll(words.subList(start.wordIndex + 1, end.wordIndex))
+                    add(words[end.wordIndex].take(end.segmentIndex))
+                }
             )
         }
 
@@ -133,6 +143,36 @@ class Phrase(val words: List<Word>) : Iterable<Word> {
         return PhraseIndex(wordIndex, segmentIndex)
     }
 
+    /**
+     * Like ``matchSubPhrase``, but looks for ``expectedSubPhrase`` finishing
+     * at ``end`` and returns where it starts.
+     */
+    fun matchSubPhraseBackward(
+        end: PhraseIndex,
+        expectedSubPhrase: Phrase,
+        segmentExtractor: (Word) -> List<Segment> = { it.segments },
+    ): PhraseIndex? {
+        val firstExpectedLength = expectedSubPhrase.first().length
+        val wordIndex = end.wordIndex - expectedSubPhrase.size + 1
+        if (wordIndex < 0) {
+            return null
+        }
+        val subWords = words.subList(wordIndex, end.wordIndex + 1).toMutableList()
+        subWords[subWords.lastIndex] = subWords[subWords.lastIndex].take(end.segmentIndex)
+        subWords[0] = subWords[0].drop(max(subWords[0].length - firstExpectedLength, 0))
+        for ((subWord, expectedSubWord) in subWords.zip(expectedSubPhrase)) {
+            if (segmentExtractor(subWord) != segmentExtractor(expectedSubWord)) {
+                return null
+            }
+        }
+        val segmentIndex = if (expectedSubPhrase.size == 1) {
+            end.segmentIndex - firstExpectedLength
+        } else {
+            words[wordIndex].length - firstExpectedLength
+        }
+        return PhraseIndex(wordIndex, segmentIndex)
+    }
+
     fun removeLeadingBreak(): Phrase =
         Phrase(listOf(words.first().removeLeadingBreak()) + words.drop(1))
 
@@ -141,9 +181,12 @@ class Phrase(val words: List<Word>) : Iterable<Word> {
 
     /**
      * Removes all syllable breaks at the edges of words.
+     * Returns this phrase itself if there weren't any.
      */
-    fun removeBoundingBreaks(): Phrase =
-        Phrase(words.map { it.removeBoundingBreaks() })
+    fun removeBoundingBreaks(): Phrase {
+        val newWords = words.map { it.removeBoundingBreaks() }
+        return if (newWords.indices.all { newWords[it] === words[it] }) this else Phrase(newWords)
+    }
 
     fun hasSyllableBreakBefore(index: PhraseIndex): Boolean =
         index.segmentIndex == 0 || index.segmentIndex in words[index.wordIndex].syllableBreaks
@@ -274,6 +317,32 @@ class Phrase(val words: List<Word>) : Iterable<Word> {
 
     fun toSimple(): Phrase = Phrase(words.map { it.toSimple() })
 
+    // Phrases are almost always checked against guards from a single
+    // family of declarations, so remembering the last set is enough.
+    private var segmentSetCache: Pair<SegmentInterner, SegmentSet?>? = null
+
+    override fun segmentSet(interner: SegmentInterner): SegmentSet? {
+        segmentSetCache?.let { (cachedInterner, set) -> if (cachedInterner === interner) return set }
+        return buildSegmentSet(interner).also { segmentSetCache = interner to it }
+    }
+
+    private fun buildSegmentSet(interner: SegmentInterner): SegmentSet? {
+        val builder = SegmentSet.Builder()
+        for (word in words) {
+            val packed = (word as? StandardWord)?.packedSegments(interner)
+            if (packed != null) {
+                for (i in 0 until packed.size) builder.add(packed.idAt(i))
+            } else {
+                for (segment in word.segments) {
+                    val id = interner.idOf(segment)
+                    if (id == NO_SEGMENT_ID) return null
+                    builder.add(id)
+                }
+            }
+        }
+        return builder.build()
+    }
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (other !is Phrase) return false
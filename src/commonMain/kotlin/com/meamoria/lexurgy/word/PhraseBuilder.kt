@@ -0,0 +1,77 @@
+package com.meamoria.lexurgy.word
+
+/**
+ * Puts a phrase together piece by piece, giving the same result as
+ * calling ``Phrase.concat`` for each piece, but without copying
+ * everything built so far every time a piece is added.
+ *
+ * The pieces of the last word are only joined once the word is
+ * finished, as long as none of them are syllabified. Syllabified
+ * pieces still get joined straight away, since their syllable
+ * modifiers have to be combined at each join.
+ */
+class PhraseBuilder {
+    private val words = ArrayList<Word>()
+
+    // Empty until the first piece is added
+    private val lastWordPieces = ArrayList<Word>()
+
+    // Whether every piece of the last word is an unsyllabified standard word;
+    // otherwise the pieces have already been joined into a single word
+    private var lastWordSimple = true
+
+    fun append(
+        phrase: Phrase,
+        syllableModifierCombiner: (List<Modifier>, List<Modifier>) -> List<Modifier>,
+    ): PhraseBuilder {
+        if (phrase.words.isEmpty()) return this
+        if (lastWordPieces.isEmpty()) {
+            startWord(phrase[0])
+        } else {
+            appendToLastWord(phrase[0], syllableModifierCombiner)
+        }
+        for (i in 1 until phrase.size) {
+            words += finishLastWord()
+            startWord(phrase[i])
+        }
+        return this
+    }
+
+    fun removeTrailingBreak(): PhraseBuilder {
+        if (lastWordPieces.isEmpty()) throw NoSuchElementException("Can't remove a break from an empty phrase")
+        // Unsyllabified words don't have any breaks to remove
+        if (!lastWordSimple) lastWordPieces[0] = lastWordPieces[0].removeTrailingBreak()
+        return this
+    }
+
+    fun build(): Phrase {
+        if (lastWordPieces.isEmpty()) return Phrase(words.toList())
+        return Phrase(words + finishLastWord())
+    }
+
+    private fun startWord(word: Word) {
+        lastWordPieces.clear()
+        lastWordPieces += word
+        lastWordSimple = word.isSimple()
+    }
+
+    private fun appendToLastWord(
+        word: Word,
+        syllableModifierCombiner: (List<Modifier>, List<Modifier>) -> List<Modifier>,
+    ) {
+        if (lastWordSimple && word.isSimple()) {
+            lastWordPieces += word
+        } else {
+            startWord(finishLastWord().concat(word, syllableModifierCombiner))
+        }
+    }
+
+    private fun finishLastWord(): Word =
+        if (lastWordPieces.size == 1) lastWordPieces[0]
+        else {
+            val segments = lastWordPieces.map { it.segments }
+            StandardWord(PackedSegments.concat(segments) ?: segments.flatten())
+        }
+
+    private fun Word.isSimple(): Boolean = this is StandardWord && !isSyllabified()
+}
@@ -1,6 +1,31 @@
 package com.meamoria.lexurgy.word
 
-data class PhraseIndex(val wordIndex: Int, val segmentIndex: Int) : Comparable<PhraseIndex> {
+import kotlin.jvm.JvmInline
+
+/**
+ * A position in a phrase: the index of a word, and of a segment within that word.
+ *
+ * Both halves are packed into a single ``Long``, so making, stepping and
+ * comparing indices doesn't allocate anything (unless they're boxed,
+ * e.g. as map keys or in generic collections).
+ */
+@JvmInline
+value class PhraseIndex private constructor(private val packed: Long) : Comparable<PhraseIndex> {
+    constructor(wordIndex: Int, segmentIndex: Int) : this(pack(wordIndex, segmentIndex))
+
+    val wordIndex: Int
+        get() = (packed shr 32).toInt()
+
+    val segmentIndex: Int
+        get() = packed.toInt()
+
+    operator fun component1(): Int = wordIndex
+
+    operator fun component2(): Int = segmentIndex
+
+    fun copy(wordIndex: Int = this.wordIndex, segmentIndex: Int = this.segmentIndex): PhraseIndex =
+        PhraseIndex(wordIndex, segmentIndex)
+
     /**
      * Compare this `PhraseIndex` to `other`; "larger" indices are
      * later in the phrase.
@@ -9,11 +34,10 @@ data class PhraseIndex(val wordIndex: Int, val segmentIndex: Int) : Comparable<P
      * so it can't verify whether any indices are actually valid for a given phrase.
      * It's the caller's responsibility to do that checking if necessary.
      */
-    override fun compareTo(other: PhraseIndex): Int =
-        compareBy<PhraseIndex>(
-            { it.wordIndex },
-            { it.segmentIndex },
-        ).compare(this, other)
+    override fun compareTo(other: PhraseIndex): Int {
+        val byWord = wordIndex.compareTo(other.wordIndex)
+        return if (byWord != 0) byWord else segmentIndex.compareTo(other.segmentIndex)
+    }
 
     /**
      * Advance this `PhraseIndex` by the number of words and/or
@@ -60,9 +84,19 @@ data class PhraseIndex(val wordIndex: Int, val segmentIndex: Int) : Comparable<P
             PhraseIndex(wordIndex - start.wordIndex, segmentIndex)
         }
 
-
     override fun toString(): String = "($wordIndex, $segmentIndex)"
+
+    private companion object {
+        fun pack(wordIndex: Int, segmentIndex: Int): Long =
+            (wordIndex.toLong() shl 32) or (segmentIndex.toLong() and 0xFFFFFFFFL)
+    }
 }
 
 infix fun ClosedRange<PhraseIndex>.overlaps(other: ClosedRange<PhraseIndex>): Boolean =
-    !(start >= other.endInclusive || other.start >= endInclusive)
\ No newline at end of file
+    overlaps(start, endInclusive, other.start, other.endInclusive)
+
+/**
+ * Like ``ClosedRange.overlaps``, without having to box the indices into ranges
+ */
+fun overlaps(start: PhraseIndex, end: PhraseIndex, otherStart: PhraseIndex, otherEnd: PhraseIndex): Boolean =
+    !(start >= otherEnd || otherStart >= end)
\ No newline at end of file
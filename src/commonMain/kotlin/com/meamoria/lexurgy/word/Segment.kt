@@ -3,6 +3,11 @@ package com.meamoria.lexurgy.word
 import com.meamoria.lexurgy.normalizeDecompose
 
 data class Segment(val core: String, val modifiers: List<Modifier> = emptyList()) {
+    // Segments are hashed constantly (as cache and interner keys),
+    // so it's worth working the hash out just once
+    private val hash: Int = 31 * core.hashCode() + modifiers.hashCode()
+
+    override fun hashCode(): Int = hash
 
     val string: String
         get() = core.modify(modifiers)
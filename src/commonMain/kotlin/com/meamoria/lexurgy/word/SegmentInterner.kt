@@ -0,0 +1,45 @@
+package com.meamoria.lexurgy.word
+
+/**
+ * Assigns each distinct segment a small integer id, so that sets of
+ * segments can be stored as bitsets. Ids are handed out densely
+ * starting from 0 and never change once assigned.
+ *
+ * An interner lives as long as the declarations it belongs to, so it
+ * hands out at most ``capacity`` ids; after that, new segments get
+ * ``NO_SEGMENT_ID``, and everything that uses ids has to cope with
+ * segments that don't have one (usually by falling back to looking
+ * at the segment itself).
+ */
+expect class SegmentInterner(capacity: Int = DEFAULT_INTERNER_CAPACITY) {
+    val capacity: Int
+
+    /**
+     * The number of ids handed out so far. Every id below this
+     * number can be passed to ``segment``.
+     */
+    val size: Int
+
+    /**
+     * Returns the id of the specified segment, assigning a new
+     * one if it hasn't been seen before, or ``NO_SEGMENT_ID``
+     * if it's new and the interner is full.
+     */
+    fun idOf(segment: Segment): Int
+
+    /**
+     * Returns the segment with the specified id.
+     */
+    fun segment(id: Int): Segment
+}
+
+/**
+ * The most ids an interner hands out by default. Real inventories are
+ * far smaller than this, even counting every combination of diacritics.
+ */
+const val DEFAULT_INTERNER_CAPACITY: Int = 4096
+
+/**
+ * Stands in for the id of a segment an interner had no room for
+ */
+const val NO_SEGMENT_ID: Int = -1
@@ -0,0 +1,113 @@
+package com.meamoria.lexurgy.word
+
+/**
+ * An immutable set of segment ids (as assigned by a ``SegmentInterner``),
+ * stored as a bitset.
+ */
+class SegmentSet private constructor(private val bits: LongArray) {
+    /**
+     * One more than the largest id in this set (0 if the set is empty)
+     */
+    val end: Int = bits.indexOfLast { it != 0L }.let { lastWord ->
+        if (lastWord < 0) 0 else lastWord * 64 + 64 - bits[lastWord].countLeadingZeroBits()
+    }
+
+    operator fun contains(id: Int): Boolean {
+        val wordIndex = id ushr 6
+        return wordIndex < bits.size && bits[wordIndex] and (1L shl id) != 0L
+    }
+
+    fun isEmpty(): Boolean = end == 0
+
+    /**
+     * Checks whether this set and ``other`` have any ids in common
+     */
+    infix fun intersects(other: SegmentSet): Boolean {
+        for (i in 0 until minOf(bits.size, other.bits.size)) {
+            if (bits[i] and other.bits[i] != 0L) return true
+        }
+        return false
+    }
+
+    infix fun union(other: SegmentSet): SegmentSet {
+        if (other.bits.size > bits.size) return other union this
+        val result = bits.copyOf()
+        for (i in other.bits.indices) {
+            result[i] = result[i] or other.bits[i]
+        }
+        return SegmentSet(result)
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is SegmentSet) return false
+        return end == other.end && (0 until ((end + 63) ushr 6)).all { bits[it] == other.bits[it] }
+    }
+
+    override fun hashCode(): Int =
+        bits.copyOf((end + 63) ushr 6).contentHashCode()
+
+    override fun toString(): String =
+        (0 until end).filter { it in this }.joinToString(prefix = "{", postfix = "}")
+
+    /**
+     * Accumulates ids for a new ``SegmentSet``
+     */
+    class Builder {
+        private var bits = LongArray(1)
+
+        fun add(id: Int): Builder {
+            val wordIndex = id ushr 6
+            if (wordIndex >= bits.size) bits = bits.copyOf(maxOf(wordIndex + 1, bits.size * 2))
+            bits[wordIndex] = bits[wordIndex] or (1L shl id)
+            return this
+        }
+
+        fun build(): SegmentSet = SegmentSet(bits.copyOf())
+    }
+
+    companion object {
+        val EMPTY: SegmentSet = SegmentSet(LongArray(0))
+
+        fun of(ids: Iterable<Int>): SegmentSet {
+            val builder = Builder()
+            for (id in ids) builder.add(id)
+            return builder.build()
+        }
+    }
+}
+
+/**
+ * Something that can summarize which segments it contains
+ */
+interface SegmentInventory {
+    /**
+     * Returns the ids of all the segments this contains,
+     * as assigned by the specified interner, or null if
+     * the interner had no room for some of them.
+     */
+    fun segmentSet(interner: SegmentInterner): SegmentSet?
+
+    companion object {
+        /**
+         * An inventory of all the segments in any of the specified inventories
+         */
+        fun union(inventories: List<SegmentInventory>): SegmentInventory =
+            object : SegmentInventory {
+                private var cache: Pair<SegmentInterner, SegmentSet?>? = null
+
+                override fun segmentSet(interner: SegmentInterner): SegmentSet? {
+                    cache?.let { (cachedInterner, set) -> if (cachedInterner === interner) return set }
+                    return unionOf(interner).also { cache = interner to it }
+                }
+
+                private fun unionOf(interner: SegmentInterner): SegmentSet? {
+                    var result = SegmentSet.EMPTY
+                    for (inventory in inventories) {
+                        result = result union (inventory.segmentSet(interner) ?: return null)
+                    }
+                    return result
+                }
+            }
+    }
+}
@@ -21,6 +21,23 @@ class StandardWord private constructor(
 
     override fun toStandard(): StandardWord = this
 
+    /**
+     * This word with its segments packed by the specified interner,
+     * so that comparing it with other words packed by the same
+     * interner only compares segment ids. The word is left as it is
+     * if the interner has no room for its segments.
+     */
+    fun pack(interner: SegmentInterner): StandardWord {
+        val packed = PackedSegments.pack(segments, interner) ?: return this
+        return if (packed === segments) this else StandardWord(packed, syllabification)
+    }
+
+    /**
+     * This word's segments, if they've been packed by the specified interner
+     */
+    fun packedSegments(interner: SegmentInterner): PackedSegments? =
+        (segments as? PackedSegments)?.takeIf { it.interner === interner }
+
     override fun normalize(parser: PhoneticParser): Word =
         StandardWord(
             segments.map { it.normalizeDecompose(parser) },
@@ -44,25 +61,28 @@ class StandardWord private constructor(
 
     override fun forceReversed(): Word =
         StandardWord(
-            segments.reversed(),
+            (segments as? PackedSegments)?.reversed() ?: segments.reversed(),
             syllabification?.reversed(),
         )
 
     override fun slice(indices: IntRange): Word =
         StandardWord(
-            segments.slice(indices),
+            if (segments is PackedSegments && !indices.isEmpty()) segments.subList(indices.first, indices.last + 1)
+            else segments.slice(indices),
             syllabification?.slice(indices),
         )
 
     override fun take(n: Int): Word =
         StandardWord(
-            segments.take(n),
+            if (segments is PackedSegments) segments.subList(0, minOf(n, length))
+            else segments.take(n),
             syllabification?.take(n),
         )
 
     override fun drop(n: Int): Word =
         StandardWord(
-            segments.drop(n),
+            if (segments is PackedSegments) segments.subList(minOf(n, length), length)
+            else segments.drop(n),
             syllabification?.drop(n),
         )
 
@@ -87,16 +107,15 @@ class StandardWord private constructor(
     }
 
     override fun removeLeadingBreak(): Word =
-        StandardWord(
-            segments,
-            syllabification?.removeLeadingBreak(),
-        )
+        replaceSyllabification(syllabification?.removeLeadingBreak())
 
     override fun removeTrailingBreak(): Word =
-        StandardWord(
-            segments,
-            syllabification?.removeTrailingBreak(),
-        )
+        replaceSyllabification(syllabification?.removeTrailingBreak())
+
+    // Keeps this word if the syllabification didn't change,
+    // so that callers can tell nothing happened
+    private fun replaceSyllabification(newSyllabification: Syllabification?): StandardWord =
+        if (newSyllabification === syllabification) this else StandardWord(segments, newSyllabification)
 
     override fun concat(
         other: Word,
@@ -109,8 +128,11 @@ class StandardWord private constructor(
             other.isEmpty() -> { left, _ -> left }
             else -> syllableModifierCombiner
         }
+        val packedConcat = (segments as? PackedSegments)?.let { packed ->
+            (other.segments as? PackedSegments)?.let { packed + it }
+        }
         return StandardWord(
-            segments + other.segments,
+            packedConcat ?: (segments + other.segments),
             if (isSyllabified() || other.isSyllabified()) {
                 forcedSyllabification.concat(
                     otherStandard.forcedSyllabification,
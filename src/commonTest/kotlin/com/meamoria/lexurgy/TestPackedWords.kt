@@ -0,0 +1,65 @@
+package com.meamoria.lexurgy
+
+import com.meamoria.lexurgy.word.NO_SEGMENT_ID
+import com.meamoria.lexurgy.word.PackedSegments
+import com.meamoria.lexurgy.word.Phrase
+import com.meamoria.lexurgy.word.SegmentInterner
+import com.meamoria.lexurgy.word.StandardWord
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestPackedWords : StringSpec({
+    val interner = SegmentInterner()
+    fun word(schematic: String): StandardWord = StandardWord.fromSchematic(schematic)
+    fun packed(schematic: String): StandardWord = word(schematic).pack(interner)
+
+    "Packed words should equal the same words unpacked" {
+        packed("b/a/n/a/n/a") shouldBe word("b/a/n/a/n/a")
+        word("b/a/n/a/n/a") shouldBe packed("b/a/n/a/n/a")
+        packed("p)ʰ/ou|́/ⁿ(t/ei|̀/t/o").hashCode() shouldBe word("p)ʰ/ou|́/ⁿ(t/ei|̀/t/o").hashCode()
+        (packed("b/a/n/a/n/a") == packed("b/a/n/a/n/o")) shouldBe false
+    }
+
+    "Packed words should give back the same segments" {
+        val potato = packed("p)ʰ/ou|́/ⁿ(t/ei|̀/t/o")
+        potato.segments shouldBe word("p)ʰ/ou|́/ⁿ(t/ei|̀/t/o").segments
+        potato.string shouldBe "pʰóuⁿtèito"
+    }
+
+    "Equal segments in packed words should be the same object" {
+        val banana = packed("b/a/n/a/n/a")
+        (banana.segments[1] === banana.segments[3]) shouldBe true
+    }
+
+    "Slicing and joining packed words should keep them packed" {
+        val banana = packed("b/a/n/a/n/a")
+        val sliced = banana.slice(1..3).toStandard()
+        sliced shouldBe word("a/n/a")
+        (sliced.segments is PackedSegments) shouldBe true
+
+        val joined = banana.take(2).concat(banana.drop(4)) { left, _ -> left }.toStandard()
+        joined shouldBe word("b/a/n/a")
+        (joined.segments is PackedSegments) shouldBe true
+        banana.forceReversed() shouldBe word("a/n/a/n/a/b")
+    }
+
+    "Packing a packed word again should give back the same word" {
+        val banana = packed("b/a/n/a/n/a")
+        (banana.pack(interner) === banana) shouldBe true
+        (banana.pack(SegmentInterner()) === banana) shouldBe false
+    }
+
+    "A full interner should leave words with new segments unpacked" {
+        val small = SegmentInterner(capacity = 2)
+        val banana = word("b/a/n/a/n/a")
+        (banana.pack(small) === banana) shouldBe true
+        small.size shouldBe 2
+        small.idOf(banana.segments[2]) shouldBe NO_SEGMENT_ID
+        Phrase(banana).segmentSet(small) shouldBe null
+
+        val baba = word("b/a/b/a").pack(small)
+        (baba.segments is PackedSegments) shouldBe true
+        baba shouldBe word("b/a/b/a")
+    }
+})
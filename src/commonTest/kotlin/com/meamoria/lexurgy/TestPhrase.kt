@@ -1,6 +1,8 @@
 package com.meamoria.lexurgy
 
+import com.meamoria.lexurgy.word.Modifier
 import com.meamoria.lexurgy.word.Phrase
+import com.meamoria.lexurgy.word.PhraseBuilder
 import com.meamoria.lexurgy.word.PhraseIndex
 import com.meamoria.lexurgy.word.StandardWord
 import com.meamoria.lexurgy.word.Word
@@ -32,4 +34,34 @@ class TestPhrase : StringSpec({
             PhraseIndex(0, 0),
         )
     }
+
+    "Phrase indices should keep both halves and compare word first" {
+        val index = PhraseIndex(3, 70000)
+        index.wordIndex shouldBe 3
+        index.segmentIndex shouldBe 70000
+        (PhraseIndex(-1, 0) < PhraseIndex(0, 0)) shouldBe true
+        (PhraseIndex(0, 5) < PhraseIndex(1, 0)) shouldBe true
+        index.copy(segmentIndex = 2) shouldBe PhraseIndex(3, 2)
+    }
+
+    "Slicing across words should trim only the outer words" {
+        val phrase = Phrase(word("a/b"), word("c/d"), word("e/f"))
+        phrase.slice(PhraseIndex(0, 1), PhraseIndex(2, 1)) shouldBe Phrase(word("b"), word("c/d"), word("e"))
+        phrase.dropUntil(PhraseIndex(1, 1)) shouldBe Phrase(word("d"), word("e/f"))
+        phrase.dropUntil(phrase.firstIndex) shouldBe phrase
+    }
+
+    "Building a phrase should give the same result as concatenating the pieces" {
+        val pieces = listOf(
+            Phrase(word("a/b")),
+            Phrase(word("c"), word("d/e")),
+            Phrase(word("f//g/h")),
+            Phrase(word("i"), word("j")),
+        )
+        val combiner = { left: List<Modifier>, right: List<Modifier> -> left + right }
+        val builder = PhraseBuilder()
+        for (piece in pieces) builder.append(piece, combiner)
+        builder.build() shouldBe pieces.reduce { acc, piece -> acc.concat(piece, combiner) }
+        PhraseBuilder().build() shouldBe Phrase()
+    }
 })
@@ -0,0 +1,67 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestCaches : StringSpec({
+    "A cache should count hits and misses" {
+        val cache = Cache<String, Int>(10)
+        cache["a"] shouldBe null
+        cache["a"] = 1
+        cache["a"] shouldBe 1
+        cache.getOrPut("a") { 2 } shouldBe 1
+        cache.getOrPut("b") { 2 } shouldBe 2
+
+        cache.stats shouldBe CacheStats(hits = 2, misses = 2, evictions = 0, size = 2)
+    }
+
+    "A cache should never hold more than its maximum size" {
+        val cache = Cache<Int, Int>(10)
+        for (i in 0 until 100) cache[i] = i
+        val stats = cache.stats
+        (stats.size <= 10) shouldBe true
+        stats.evictions shouldBe 100L - stats.size
+    }
+
+    "Resetting a cache's statistics should keep its entries" {
+        val cache = Cache<String, Int>(10)
+        cache["a"] = 1
+        cache["a"]
+        cache.resetStats()
+        cache.stats shouldBe CacheStats(0, 0, 0, 1)
+        cache["a"] shouldBe 1
+    }
+
+    "Sound changers should report the statistics of their declarations' caches" {
+        val ch = SoundChanger.fromLsc(
+            """
+                Feature +voiced
+                Symbol p [-voiced]
+                Symbol b [+voiced]
+                voicing:
+                    [-voiced] => [+voiced]
+            """.trimIndent()
+        )
+        ch.change(listOf("pa", "pap")) shouldBe listOf("ba", "bab")
+        (ch.cacheStats.getValue("matrixToSymbol").hits > 0) shouldBe true
+
+        ch.resetCacheStats()
+        ch.cacheStats.values.all { it.hits == 0L && it.misses == 0L } shouldBe true
+    }
+
+    "Words with the same segments and syllables should share their syllabification" {
+        val ch = SoundChanger.fromLsc(
+            """
+                Class vowel {a, i}
+                Syllables:
+                    {p, t}? @vowel
+            """.trimIndent()
+        )
+        ch.change(listOf("tapi", "tapi", "pita", "tapi")) shouldBe listOf("ta.pi", "ta.pi", "pi.ta", "ta.pi")
+
+        val stats = ch.cacheStats.getValue("syllabification")
+        stats.misses shouldBe 2L
+        stats.hits shouldBe 2L
+    }
+})
@@ -0,0 +1,201 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.word.Phrase
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+import com.meamoria.mpp.kotest.shouldThrow
+
+@Suppress("unused")
+class TestCheckpoints : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    val source = """
+        Feature (syllable) +stress
+        Diacritic ˈ (before) [+stress]
+        Class vowel {a, e, i}
+        Class cons {p, t, k, s, b, d, g}
+        Syllables:
+            @cons? @vowel @cons?
+        voicing:
+            {p, t, k} => {b, d, g} / @vowel _ @vowel
+        stress:
+            <syl> => [+stress] / $ _
+        Romanizer-stressed:
+            unchanged
+        breaking:
+            e => i a / _ s
+        Romanizer:
+            s => z
+    """.trimIndent()
+    val ch = lsc(source)
+    val words = listOf("tapeki", "akapes", "tes", "pst")
+
+    fun SoundChanger.changeWithStore(
+        store: CheckpointStore,
+        startAt: String? = null,
+        checkpointAt: List<String> = emptyList(),
+    ): List<String> =
+        changeWithIntermediatesAndIndividualErrors(
+            words,
+            startAt = startAt,
+            checkpointStore = store,
+            checkpointAt = checkpointAt,
+        ).getValue(null).map { it.getOrThrow() }
+
+    class LoadRecordingStore : CheckpointStore {
+        private val inner = InMemoryCheckpointStore()
+        val loaded = mutableListOf<String>()
+
+        override fun load(key: String): Checkpoint? = inner.load(key).also { loaded += key }
+
+        override fun save(key: String, checkpoint: Checkpoint) = inner.save(key, checkpoint)
+
+        override fun fingerprint(key: String): String? = inner.fingerprint(key)
+    }
+
+    "Checkpoints should preserve syllable structure" {
+        val phrase = Phrase(
+            ch.initialDeclarations.parsePhonetic("ˈta.pe"),
+            ch.initialDeclarations.parsePhonetic("kis"),
+        )
+        val decoded = Checkpoint.decode(Checkpoint("abc", listOf(phrase, null)).encode())
+        decoded.fingerprint shouldBe "abc"
+        decoded.phrases.size shouldBe 2
+        decoded.phrases[0]!!.string shouldBe phrase.string
+        decoded.phrases[0]!!.words.map { it.syllableBreaks } shouldBe phrase.words.map { it.syllableBreaks }
+        decoded.phrases[1] shouldBe null
+    }
+
+    "Checkpoints that were cut short shouldn't decode" {
+        val encoded = Checkpoint(
+            "abc",
+            listOf(Phrase(ch.initialDeclarations.parsePhonetic("ta.pe")), null),
+            mapOf("stressed" to listOf("tape", null)),
+        ).encode()
+        for (length in listOf(2, encoded.indexOf("\n", 4), encoded.length - 3)) {
+            Checkpoint.decodeOrNull(encoded.take(length)) shouldBe null
+        }
+        shouldThrow<IllegalArgumentException> { Checkpoint.decode("abc") }
+    }
+
+    "Starting at a rule with a checkpoint store should run the earlier rules the first time" {
+        val store = InMemoryCheckpointStore()
+        ch.changeWithStore(store, startAt = "breaking") shouldBe ch.change(words)
+        store.keys.single() shouldBe "breaking-${Checkpoint.fingerprint(words)}"
+    }
+
+    "Later runs should pick up from the nearest checkpoint" {
+        val store = InMemoryCheckpointStore()
+        ch.changeWithStore(store, checkpointAt = listOf("stress"))
+        val key = "stress-${Checkpoint.fingerprint(words)}"
+        val saved = store.load(key)!!
+
+        // Tamper with the checkpoint to prove it gets used
+        val tampered = saved.phrases.map { Phrase(ch.initialDeclarations.parsePhonetic("tes")) }
+        store.save(key, Checkpoint(saved.fingerprint, tampered))
+        ch.changeWithStore(store, startAt = "breaking") shouldBe
+                List(words.size) { ch.change(listOf("tes"), startAt = "stress").single() }
+    }
+
+    "Checkpoints should be ignored if an earlier rule changed" {
+        val store = InMemoryCheckpointStore()
+        ch.changeWithStore(store, checkpointAt = listOf("breaking"))
+
+        val edited = lsc(source.replace("{b, d, g} / @vowel", "{f, s, x} / @vowel"))
+        edited.changeWithStore(store, startAt = "breaking") shouldBe edited.change(words)
+    }
+
+    "Starting at a rule should reuse its checkpoint from an earlier run of the same rules" {
+        val propagating = source.replace("voicing:", "voicing propagate:")
+        val store = LoadRecordingStore()
+        lsc(propagating).changeWithStore(store, startAt = "breaking")
+
+        val rerun = lsc(propagating)
+        rerun.changeWithStore(store, startAt = "breaking") shouldBe rerun.change(words)
+        store.loaded shouldBe listOf("breaking-${Checkpoint.fingerprint(words)}")
+    }
+
+    "Starting at a rule shouldn't resume from the checkpoint of a later rule" {
+        val store = LoadRecordingStore()
+        ch.changeWithStore(store, checkpointAt = listOf("stress", "breaking"))
+        store.loaded.clear()
+
+        ch.changeWithStore(store, startAt = "stress") shouldBe ch.change(words)
+        store.loaded shouldBe listOf("stress-${Checkpoint.fingerprint(words)}")
+    }
+
+    "Starting at a rule should ignore its checkpoint if an earlier rule's match mode changed" {
+        val store = LoadRecordingStore()
+        ch.changeWithStore(store, startAt = "breaking")
+
+        val edited = lsc(source.replace("voicing:", "voicing ltr:"))
+        edited.changeWithStore(store, startAt = "breaking") shouldBe edited.change(words)
+        store.loaded shouldBe emptyList()
+    }
+
+    "Incremental runs should pick up from the first changed rule" {
+        val store = LoadRecordingStore()
+        val allRules = ch.rules.mapNotNull { it.rule?.name }
+        ch.changeWithIntermediatesAndIndividualErrors(words, checkpointStore = store, checkpointAt = allRules)
+
+        val edited = lsc(source.replace("e => i a / _ s", "e => i e / _ s"))
+        val incremental = edited.changeWithIntermediatesAndIndividualErrors(
+            words, checkpointStore = store, checkpointAt = allRules
+        )
+        store.loaded shouldBe listOf("breaking-${Checkpoint.fingerprint(words)}")
+        incremental.mapValues { (_, stageWords) -> stageWords.map { it.getOrThrow() } } shouldBe
+                edited.changeWithIntermediates(words)
+    }
+
+    // Runs the original source with a checkpoint at every rule, then runs the edited
+    // source against the same store, returning the checkpoints the second run loaded
+    fun loadedAfterEdit(original: String, edited: String): List<String> {
+        val store = LoadRecordingStore()
+        val allRules = lsc(original).rules.mapNotNull { it.rule?.name }
+        lsc(original).changeWithIntermediatesAndIndividualErrors(
+            words, checkpointStore = store, checkpointAt = allRules
+        )
+
+        val editedChanger = lsc(edited)
+        val incremental = editedChanger.changeWithIntermediatesAndIndividualErrors(
+            words, checkpointStore = store, checkpointAt = allRules
+        )
+        incremental.mapValues { (_, stageWords) -> stageWords.map { it.getOrThrow() } } shouldBe
+                editedChanger.changeWithIntermediates(words)
+        return store.loaded
+    }
+
+    "Changing a rule's match mode should invalidate its checkpoint" {
+        loadedAfterEdit(source, source.replace("breaking:", "breaking ltr:")) shouldBe
+                listOf("breaking-${Checkpoint.fingerprint(words)}")
+    }
+
+    "Changing a rule's filter should invalidate its checkpoint" {
+        val filtered = source
+            .replace("Class cons", "Class front {e, i}\nClass cons")
+            .replace("e => i a / _ s", "e => i a / _ i")
+        loadedAfterEdit(
+            filtered.replace("breaking:", "breaking @front:"),
+            filtered.replace("breaking:", "breaking @vowel:"),
+        ) shouldBe listOf("breaking-${Checkpoint.fingerprint(words)}")
+    }
+
+    "Changing a feature's default should invalidate every checkpoint" {
+        loadedAfterEdit(
+            "Feature height(*low, high)\n$source",
+            "Feature height(high)\n$source",
+        ) shouldBe emptyList()
+    }
+
+    "Rules after a propagating rule should still resume from checkpoints" {
+        val propagating = source.replace("voicing:", "voicing propagate:")
+        loadedAfterEdit(propagating, propagating.replace("e => i a / _ s", "e => i e / _ s")) shouldBe
+                listOf("breaking-${Checkpoint.fingerprint(words)}")
+    }
+
+    "Checkpoints at unknown rules should be rejected" {
+        shouldThrow<LscRuleNotFound> {
+            ch.changeWithStore(InMemoryCheckpointStore(), checkpointAt = listOf("nonexistent"))
+        }
+    }
+})
@@ -141,4 +141,40 @@ class TestEnvironment : StringSpec({
         ch("akja") shouldBe "a.kja"
         ch("ktentka") shouldBe "ktent.ka"
     }
+
+    "Lookbehind should handle repeaters, negations and captures" {
+        val ch = lsc(
+            """
+                Class vowel {a, e, i, o, u}
+                lowering:
+                    i => e / a t* _
+                backing:
+                    u => o / !a _
+                degemination:
+                    @vowel$1 => * / $1 _
+            """.trimIndent()
+        )
+
+        ch("atti") shouldBe "atte"
+        ch("ai") shouldBe "ae"
+        ch("pti") shouldBe "pti"
+        ch("pu") shouldBe "po"
+        ch("u") shouldBe "u"
+        ch("baaki") shouldBe "baki"
+        ch("bauki") shouldBe "bauki"
+    }
+
+    "Lookbehind should see syllable breaks" {
+        val ch = lsc(
+            """
+                Syllables:
+                    explicit
+                fronting:
+                    a => e / . _
+            """.trimIndent()
+        )
+
+        ch("mu.a.ta") shouldBe "mu.e.ta"
+        ch("ma.ua") shouldBe "ma.ua"
+    }
 })
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestExecutionModes : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    val ch = lsc(
+        """
+            Feature (syllable) +stress
+            Diacritic ˈ (before) [+stress]
+            Class vowel {a, e, i}
+            Class cons {p, t, k, s, b, d, g}
+            Syllables:
+                @cons? @vowel @cons?
+            hiatus cleanup:
+                @vowel => * / @vowel _
+            voicing:
+                {p, t, k} => {b, d, g} / @vowel _ @vowel
+            Romanizer-voiced:
+                unchanged
+            stress:
+                <syl> => [+stress] / $ _
+            hiatus:
+                off
+            Syllables:
+                @cons? @vowel+ @cons?
+            breaking:
+                e => i a / _ s
+            Romanizer:
+                s => z
+        """.trimIndent()
+    )
+    val words = listOf("tapeki", "akapes", "aeta", "pst", "tes")
+
+    "Word-major execution should give the same results as rule-major execution" {
+        val ruleMajor = ch.changeWithIntermediatesAndIndividualErrors(words)
+        val wordMajor = ch.withExecutionMode(ExecutionMode.WORD_MAJOR)
+            .changeWithIntermediatesAndIndividualErrors(words)
+
+        wordMajor.keys shouldBe ruleMajor.keys
+        for ((stage, stageWords) in ruleMajor) {
+            wordMajor.getValue(stage).map { it.getOrNull() } shouldBe stageWords.map { it.getOrNull() }
+        }
+        wordMajor.getValue(null)[3].isFailure shouldBe true
+    }
+
+    "Word-major execution should trace words in the same order as rule-major execution" {
+        val debugWords = listOf("tes", "tapeki")
+
+        val ruleMajorLines = mutableListOf<String>()
+        ch.changeWithIndividualErrors(words, debugWords = debugWords, debug = { ruleMajorLines += it })
+
+        val wordMajorLines = mutableListOf<String>()
+        ch.withExecutionMode(ExecutionMode.WORD_MAJOR)
+            .changeWithIndividualErrors(words, debugWords = debugWords, debug = { wordMajorLines += it })
+
+        wordMajorLines shouldBe ruleMajorLines
+    }
+
+    "Word-major execution should respect start and stop rules" {
+        val wordMajor = ch.withExecutionMode(ExecutionMode.WORD_MAJOR)
+        wordMajor.changeWithIntermediates(words.take(2), startAt = "voicing", stopBefore = "breaking") shouldBe
+                ch.changeWithIntermediates(words.take(2), startAt = "voicing", stopBefore = "breaking")
+    }
+})
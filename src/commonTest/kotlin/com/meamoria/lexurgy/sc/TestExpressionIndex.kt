@@ -0,0 +1,50 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestExpressionIndex : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    "Earlier expressions should still win overlaps against earlier matches of later expressions" {
+        val ch = lsc(
+            """
+                overlap:
+                    b c => x
+                    a b => y
+            """.trimIndent()
+        )
+        ch.change(listOf("abc", "bcab", "abab")) shouldBe listOf("ax", "xy", "yy")
+    }
+
+    "Expressions that can match without a segment should be tried at the ends of words" {
+        val ch = lsc(
+            """
+                Class vowel {a, i}
+                edges:
+                    t => d
+                    * => n / @vowel _ $
+            """.trimIndent()
+        )
+        ch.change(listOf("ta", "tat")) shouldBe listOf("dan", "dad")
+    }
+
+    "Expressions should only be tried where their first segment matches" {
+        val profiler = Profiler()
+        val ch = lsc(
+            """
+                Class vowel {a, i}
+                multi:
+                    b c => x
+                    a b => y
+                    @vowel$1 => * / _ $1
+            """.trimIndent()
+        ).withProfiler(profiler)
+        ch.change(listOf("abcii")) shouldBe listOf("axi")
+
+        val multi = profiler.profile().steps.single { it.kind == StepKind.RULE && it.name == "multi" }
+        multi.claims shouldBe 3L
+        multi.claimAttempts shouldBe 5L
+    }
+})
@@ -0,0 +1,81 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.word.Modifier
+import com.meamoria.lexurgy.word.ModifierPosition
+import com.meamoria.lexurgy.word.Segment
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestFeatureBits : StringSpec({
+    val declarations = SoundChanger.fromLsc(
+        """
+            Feature Manner(stop, nonstop)
+            Feature Place(labial, alveolar, velar)
+            Feature +voiced
+            Symbol p [labial stop]
+            Symbol b [labial stop +voiced]
+            Symbol t [alveolar stop]
+            Symbol f [labial nonstop]
+            Diacritic ʰ [nonstop]
+        """.trimIndent()
+    ).initialDeclarations
+
+    fun matrix(vararg values: MatrixValue): Matrix = Matrix(values.toList())
+
+    "Updating a matrix should replace the values of the updated features" {
+        with(declarations) {
+            val p = Segment("p").toMatrix()
+            p.update(matrix(SimpleValue("alveolar"))) shouldBe matrix(SimpleValue("stop"), SimpleValue("alveolar"))
+            p.update(matrix(SimpleValue("+voiced"))).toSymbol() shouldBe Segment("b")
+            Segment("b").toMatrix().update(matrix(SimpleValue("-voiced"))).toSymbol() shouldBe Segment("p")
+        }
+    }
+
+    "Matrices should match patterns with implicit defaults and negation" {
+        with(declarations) {
+            val p = Segment("p").toMatrix()
+            val bindings = Bindings()
+            (p.matches(matrix(SimpleValue("stop"), SimpleValue("-voiced")), bindings) != null) shouldBe true
+            (p.matches(matrix(SimpleValue("+voiced")), bindings) != null) shouldBe false
+            (p.matches(matrix(NegatedValue("nonstop")), bindings) != null) shouldBe true
+            (p.matches(matrix(NegatedValue("labial")), bindings) != null) shouldBe false
+        }
+    }
+
+    "Feature variables should still bind against matrices" {
+        with(declarations) {
+            val f = Segment("f").toMatrix()
+            f.matches(matrix(FeatureVariable("Manner")), Bindings())!!.features.values.single() shouldBe
+                    SimpleValue("nonstop")
+        }
+    }
+
+    "Matching a matrix without variables should hand back the same bindings" {
+        with(declarations) {
+            val p = Segment("p").toMatrix()
+            val bindings = Bindings().bindFeature("Place".toFeature(), SimpleValue("labial"))
+            (p.matches(matrix(SimpleValue("stop"), NegatedValue("nonstop")), bindings) === bindings) shouldBe true
+            (p.matches(matrix(FeatureVariable("Place")), bindings) === bindings) shouldBe true
+        }
+    }
+
+    "Matrices with the same values should resolve to the same symbol, however they're written" {
+        with(declarations) {
+            val aspirated = matrix(SimpleValue("alveolar"), SimpleValue("nonstop"))
+            aspirated.toSymbol() shouldBe Segment("t", listOf(Modifier("ʰ", ModifierPosition.AFTER)))
+
+            resetCacheStats()
+            val explicit = matrix(SimpleValue("nonstop"), SimpleValue("alveolar"), SimpleValue("-voiced"))
+            explicit.toSymbol() shouldBe aspirated.toSymbol()
+            cacheStats.getValue("symbolIndex").hits shouldBe 1L
+        }
+    }
+
+    "Looking up the modifiers for a matrix should use the diacritics" {
+        with(declarations) {
+            matrix(SimpleValue("nonstop")).toModifiers() shouldBe listOf(Modifier("ʰ", ModifierPosition.AFTER))
+            Matrix.EMPTY.toModifiers() shouldBe emptyList()
+        }
+    }
+})
@@ -342,6 +342,20 @@ class TestNegation : StringSpec({
         ch("abxxxabxab") shouldBe "abxzxabxab"
     }
 
+    "Negated lookaround should rule out every way of matching repeaters and alternatives" {
+        val ch = lsc(
+            """
+                lookahead:
+                    a => e / _ !{t+ k, p p}
+            """.trimIndent()
+        )
+
+        ch("attka") shouldBe "attka"
+        ch("atta") shouldBe "etta"
+        ch("appo") shouldBe "appo"
+        ch("apo") shouldBe "epo"
+    }
+
     "Arbitrary elements can be negated as the second part of an intersection" {
         val ch = lsc(
             """
@@ -0,0 +1,83 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestProfiler : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    val source = """
+        Class vowel {a, e, i}
+        Syllables:
+            {p, t, k}? @vowel
+        voicing:
+            {p, t, k} => {b, d, g} / @vowel _ @vowel
+        Romanizer-voiced:
+            unchanged
+        raising:
+            e => i
+    """.trimIndent()
+    val words = listOf("tapeki", "pata", "aaa")
+
+    fun Profile.step(kind: StepKind, name: String): StepProfile =
+        steps.single { it.kind == kind && it.name == name }
+
+    for (mode in ExecutionMode.values()) {
+        "The profiler should count the words each step changes in $mode mode" {
+            val profiler = Profiler()
+            val ch = lsc(source).withExecutionMode(mode).withProfiler(profiler)
+            ch.change(words) shouldBe ch.withProfiler(null).change(words)
+
+            val profile = profiler.profile()
+            profile.step(StepKind.RULE, "voicing").wordsChanged shouldBe 2L
+            profile.step(StepKind.RULE, "raising").wordsChanged shouldBe 1L
+            profile.step(StepKind.INTERMEDIATE_ROMANIZER, "voiced").wordsChanged shouldBe 0L
+            (profile.step(StepKind.SYLLABIFICATION, "syllables").wordsChanged >= 3) shouldBe true
+        }
+    }
+
+    "The profiler should count matching work" {
+        val profiler = Profiler()
+        val ch = lsc(source).withProfiler(profiler)
+        ch.change(words)
+
+        val voicing = profiler.profile().step(StepKind.RULE, "voicing")
+        voicing.claims shouldBe 3L
+        voicing.transformations shouldBe 3L
+        (voicing.claimAttempts >= voicing.claims) shouldBe true
+    }
+
+    "The profiler should only count matching work from its own runs" {
+        val profiler = Profiler()
+        val unprofiled = lsc(source)
+        val ch = unprofiled.withProfiler(profiler)
+        unprofiled.change(words)
+        ch.change(words)
+        unprofiled.change(words)
+
+        val voicing = profiler.profile().step(StepKind.RULE, "voicing")
+        voicing.claims shouldBe 3L
+        voicing.transformations shouldBe 3L
+    }
+
+    "The profiler should accumulate statistics until it's reset" {
+        val profiler = Profiler()
+        val ch = lsc(source).withProfiler(profiler)
+        ch.change(words)
+        ch.change(words)
+        profiler.profile().step(StepKind.RULE, "voicing").wordsChanged shouldBe 4L
+
+        profiler.reset()
+        profiler.profile().steps shouldBe emptyList()
+    }
+
+    "The profile report should list every step" {
+        val profiler = Profiler()
+        lsc(source).withProfiler(profiler).change(words)
+        val report = profiler.profile().report()
+        for (name in listOf("rule voicing", "rule raising", "intermediate romanizer voiced", "syllabification")) {
+            report.contains(name) shouldBe true
+        }
+    }
+})
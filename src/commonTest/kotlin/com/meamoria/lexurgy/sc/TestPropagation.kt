@@ -46,6 +46,48 @@ class TestPropagation : StringSpec({
         ex.cause.shouldBeInstanceOf<LscDivergingPropagation>()
     }
 
+    "A diverging propagation should report every version of the word up to the repeat" {
+        val ch = lsc(
+            """
+                bouncing propagate:
+                a => e / b _
+                e => a / _ d
+            """.trimIndent()
+        )
+
+        val ex = shouldThrow<LscRuleNotApplicable> { ch("bed") }
+        (ex.cause as LscDivergingPropagation).wordsAtAbort shouldBe listOf("bed", "bad")
+
+        val ch2 = lsc(
+            """
+                growing propagate:
+                * => b / _ $
+            """.trimIndent()
+        )
+
+        val ex2 = shouldThrow<LscRuleNotApplicable> { ch2("a") }
+        (ex2.cause as LscDivergingPropagation).wordsAtAbort shouldBe
+                (96..100).map { "a" + "b".repeat(it) }
+    }
+
+    "Propagating a simple rule should give the same results as rechecking the whole word" {
+        val rule = """
+            Class all {a, b, c, d, e}
+            spread propagate:
+                a => b / b _
+                c => d d / _ b
+                e => e
+        """.trimIndent()
+        val ch = lsc(rule)
+        // Passing everything through a filter makes the rule recheck the whole word every time
+        val wholeWord = lsc(rule.replace("spread propagate", "spread @all propagate"))
+
+        ch("baaacb") shouldBe "bbbbddb"
+        for (word in listOf("baaaaaacb", "eaaacbeaaab", "abacabab", "baaaaaaaaaaaaaaaaaaaae")) {
+            ch(word) shouldBe wholeWord(word)
+        }
+    }
+
     "We should be able to propagate parts of a sequential block" {
         val ch = lsc(
             """
@@ -153,6 +195,28 @@ class TestPropagation : StringSpec({
         ch("CVCCVCVV") shouldBe "ˈCVC.CV.ˈCV.V"
     }
 
+    "A filtered ltr rule should see the changes it's already made" {
+        val ch = lsc(
+            """
+                Feature type(consonant, vowel)
+                Symbol t [consonant]
+                Symbol a [vowel]
+                Symbol e [vowel]
+                harmony ltr [vowel]:
+                    a => e / e _
+                deletion ltr [vowel]:
+                    a => * / e _
+            """.trimIndent()
+        )
+
+        ch.change(listOf("tetatata"), stopBefore = "deletion") shouldBe listOf("tetetete")
+        ch.change(listOf("tetatata"), startAt = "deletion") shouldBe listOf("tettt")
+
+        // Changing one word shouldn't disturb the others
+        ch.change(listOf("tetata tata teta"), stopBefore = "deletion") shouldBe listOf("tetete tata tete")
+        ch.change(listOf("tetata tata teta"), startAt = "deletion") shouldBe listOf("tett tata tet")
+    }
+
     "An ltr rule ignores expressions that error out if earlier expressions take precedence" {
         val ch = lsc(
             """
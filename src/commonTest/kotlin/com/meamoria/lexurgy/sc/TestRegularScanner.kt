@@ -0,0 +1,61 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestRegularScanner : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    val source = """
+        Feature Height(high, low)
+        Feature Place(labial, coronal, dorsal)
+        Feature +voiced
+        Symbol i [high]
+        Symbol a [low]
+        Symbol p [labial]
+        Symbol t [coronal]
+        Symbol k [dorsal]
+        Symbol b [labial +voiced]
+        Symbol d [coronal +voiced]
+        Symbol g [dorsal +voiced]
+        Class vowel {a, i}
+        voicing:
+            {p, t, k} => {b, d, g} / @vowel _ @vowel
+        final-devoicing:
+            [+voiced] => [-voiced] / _ $
+        initial-raising:
+            a => i / {$, p} _
+        cluster:
+            t k? => k / _ !a
+        capture:
+            @vowel$1 => * / _ $1
+    """.trimIndent()
+
+    val words = listOf("tapaki", "pata", "tag", "atkia", "aaptka", "tkiiab")
+
+    fun Profile.rule(name: String): StepProfile =
+        steps.single { it.kind == StepKind.RULE && it.name == name }
+
+    "Scanned rules should give the same results as matching at every index" {
+        lsc(source).change(words) shouldBe listOf("tabagi", "pida", "tak", "ikia", "iapkka", "kiap")
+    }
+
+    "Scanned rules should only try to match where they can match" {
+        val profiler = Profiler()
+        lsc(source).withProfiler(profiler).change(words)
+        val profile = profiler.profile()
+        for (name in listOf("voicing", "final-devoicing", "initial-raising", "cluster")) {
+            val rule = profile.rule(name)
+            rule.claimAttempts shouldBe rule.claims
+        }
+    }
+
+    "Rules that can't be scanned should still try every index" {
+        val profiler = Profiler()
+        lsc(source).withProfiler(profiler).change(listOf("iib"))
+        val capture = profiler.profile().rule("capture")
+        capture.claims shouldBe 1L
+        capture.claimAttempts shouldBe 4L
+    }
+})
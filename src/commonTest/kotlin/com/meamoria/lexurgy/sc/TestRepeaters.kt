@@ -129,6 +129,17 @@ class TestRepeaters : StringSpec({
         }.also { it.cause.shouldBeInstanceOf<LscTooManyOptions>()}
     }
 
+    "We shouldn't abort because of alternatives that are never tried" {
+        val ch = lsc(
+            """
+                never-catastrophic:
+                    {x, (x+ x+)+ y} => z
+            """.trimIndent()
+        )
+
+        ch("xxxxxxxxxxx") shouldBe "zzzzzzzzzzz"
+    }
+
     "We should be able to change repeaters into things" {
         val ch = lsc(
             """
@@ -0,0 +1,100 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.lexurgy.sc.element.MultipleSegmentNegation
+import com.meamoria.lexurgy.word.Phrase
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+import com.meamoria.mpp.kotest.shouldBeInstanceOf
+import com.meamoria.mpp.kotest.shouldThrow
+
+@Suppress("unused")
+class TestRuleGuards : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    fun SoundChanger.admits(ruleName: String, word: String): Boolean {
+        val rule = rules.first { it.rule?.name == ruleName }.rule!!
+        val phrase = Phrase(initialDeclarations.parsePhonetic(word))
+        return rule.guard?.admits(phrase) ?: true
+    }
+
+    val ch = lsc(
+        """
+            Feature Height(high, low)
+            Feature Place(labial, coronal, dorsal)
+            Symbol i [high]
+            Symbol a [low]
+            Symbol p [labial]
+            Symbol t [coronal]
+            Symbol k [dorsal]
+            Class stop {p, t, k}
+            palatalization:
+                k => tʃ / _ i
+            raising:
+                [low] => [high] / _ {p, t}
+            optional-onset:
+                @stop? a => e
+            lenition:
+                @stop => * / _ $
+        """.trimIndent()
+    )
+
+    "Rule guards should reject words without the segments a rule needs" {
+        ch.admits("palatalization", "kia") shouldBe true
+        ch.admits("palatalization", "kaa") shouldBe false
+        ch.admits("palatalization", "tia") shouldBe false
+
+        ch.admits("raising", "ap") shouldBe true
+        ch.admits("raising", "ta") shouldBe true
+        ch.admits("raising", "ak") shouldBe false
+        ch.admits("raising", "ip") shouldBe false
+    }
+
+    "Rule guards should ignore optional elements" {
+        ch.admits("optional-onset", "a") shouldBe true
+        ch.admits("optional-onset", "pi") shouldBe false
+        ch.admits("lenition", "ip") shouldBe true
+        ch.admits("lenition", "ia") shouldBe false
+    }
+
+    "Skipping rules with guards shouldn't change any results" {
+        ch.change(listOf("kik", "akip", "ita", "ii", "kapa")) shouldBe
+                listOf("tʃi", "itʃi", "ie", "ii", "kie")
+    }
+
+    "Directional rules should still count as matching when their guard rejects a word" {
+        val blocks = lsc(
+            """
+                simultaneous:
+                    x => y
+                    Else:
+                    a => e
+                    Else:
+                    o => u
+                directional:
+                    x => y
+                    Else ltr:
+                    a => e
+                    Else:
+                    o => u
+            """.trimIndent()
+        )
+
+        blocks.change(listOf("oo"), stopBefore = "directional") shouldBe listOf("uu")
+        blocks.change(listOf("oo"), startAt = "directional") shouldBe listOf("oo")
+    }
+
+    "Rule guards shouldn't hide errors a rule would report" {
+        val bad = lsc(
+            """
+                bad-negation:
+                    !(a+) b => x
+            """.trimIndent()
+        )
+
+        shouldThrow<LscRuleNotApplicable> {
+            bad("aaa")
+        }.also {
+            it.reason.shouldBeInstanceOf<MultipleSegmentNegation>()
+        }
+    }
+})
@@ -0,0 +1,46 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestStableSteps : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    "Persistent cleanup rules shouldn't be rerun on words nothing has changed" {
+        val cleanup = """
+            hiatus cleanup:
+                a => * / a _
+            one:
+                x => y
+        """.trimIndent()
+        val moreRules = """
+            two:
+                y => z
+            three:
+                z => x
+        """.trimIndent()
+
+        fun hiatusAttempts(source: String): Long {
+            val profiler = Profiler()
+            lsc(source).withProfiler(profiler).change(listOf("taa", "pat")) shouldBe listOf("ta", "pat")
+            return profiler.profile().steps.single { it.kind == StepKind.RULE && it.name == "hiatus" }.claimAttempts
+        }
+
+        hiatusAttempts(cleanup + "\n" + moreRules) shouldBe hiatusAttempts(cleanup)
+    }
+
+    "Persistent cleanup rules should still be rerun while they keep changing words" {
+        val ch = lsc(
+            """
+                doubling cleanup:
+                    b => b b / _ $
+                one:
+                    x => y
+                two:
+                    y => z
+            """.trimIndent()
+        )
+        ch.change(listOf("ab")) shouldBe listOf("abbbb")
+    }
+})
@@ -0,0 +1,98 @@
+package com.meamoria.lexurgy.sc
+
+import com.meamoria.mpp.kotest.StringSpec
+import com.meamoria.mpp.kotest.shouldBe
+
+@Suppress("unused")
+class TestStreaming : StringSpec({
+    val lsc = SoundChanger.Companion::fromLsc
+
+    "Streaming changes should produce the same words as changing the whole list" {
+        val ch = lsc(
+            """
+                voicing:
+                    {p, t, k} => {b, d, g} / _ {a, i}
+                Romanizer-middle:
+                    d => th
+                elision:
+                    a => * / _ $
+                Romanizer:
+                    g => gh
+            """.trimIndent()
+        )
+
+        val words = listOf("pata", "kipa", "atka", "tika", "ika", "pat", "ta")
+        val middle = mutableListOf<List<String>>()
+        val chunks = ch.changeStreaming(
+            words.asSequence(),
+            chunkSize = 3,
+            intermediateSinks = mapOf("middle" to { stage -> middle += stage.map { it.getOrThrow() } }),
+        ).map { chunk -> chunk.map { it.getOrThrow() } }.toList()
+
+        val whole = ch.changeWithIntermediates(words)
+        chunks.map { it.size } shouldBe listOf(3, 3, 1)
+        chunks.flatten() shouldBe whole.getValue(null)
+        middle.flatten() shouldBe whole.getValue("middle")
+    }
+
+    "Streaming changes should only change words as they are consumed" {
+        val ch = lsc(
+            """
+                my-rule:
+                    a => e
+            """.trimIndent()
+        )
+
+        var consumed = 0
+        val words = generateSequence(0) { it + 1 }.map {
+            consumed++
+            "a".repeat(it % 5 + 1)
+        }
+
+        ch.changeStreaming(words, chunkSize = 4).first().map { it.getOrThrow() } shouldBe
+                listOf("e", "ee", "eee", "eeee")
+        consumed shouldBe 4
+    }
+
+    "Errors in streamed words should be kept with the individual words" {
+        val ch = lsc(
+            """
+                Class cons {p, t, k}
+                Class vowel {a, i}
+                Syllables:
+                    @cons? @vowel
+                lowering:
+                    i => a
+            """.trimIndent()
+        )
+
+        val results = ch.changeStreaming(sequenceOf("pia", "pta", "ki"), chunkSize = 2).toList().flatten()
+        results.map { it.isSuccess } shouldBe listOf(true, false, true)
+        results.first().getOrThrow() shouldBe "pa.a"
+    }
+
+    "Tracing streamed words should announce each traced word once, when it's found" {
+        val ch = lsc(
+            """
+                my-rule:
+                    a => e
+            """.trimIndent()
+        )
+
+        val traceLines = mutableListOf<String>()
+        ch.changeStreaming(
+            sequenceOf("ab", "ba", "ca", "da", "ba"),
+            chunkSize = 2,
+            debugWords = listOf("ba", "da", "xa"),
+            debug = { traceLines += it },
+        ).toList()
+
+        traceLines shouldBe listOf(
+            "Tracing ba",
+            "Applied my-rule to ba: ba -> be",
+            "Tracing da",
+            "Applied my-rule to da: da -> de",
+            "Applied my-rule to ba: ba -> be",
+        )
+    }
+})
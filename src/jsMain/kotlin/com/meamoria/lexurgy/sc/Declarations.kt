@@ -1,3 +1,48 @@
 package com.meamoria.lexurgy.sc
 
-actual typealias Cache<K, V> = HashMap<K, V>
+/**
+ * A least-recently-used cache, relying on ``LinkedHashMap``
+ * iterating in insertion order
+ */
+actual class Cache<K : Any, V : Any> actual constructor(actual val maxSize: Int) {
+    private val entries = LinkedHashMap<K, V>()
+    private var hits = 0L
+    private var misses = 0L
+    private var evictions = 0L
+
+    actual operator fun get(key: K): V? {
+        val value = entries.remove(key)
+        if (value == null) {
+            misses++
+        } else {
+            hits++
+            entries[key] = value
+        }
+        return value
+    }
+
+    actual operator fun set(key: K, value: V) {
+        entries.remove(key)
+        entries[key] = value
+        while (entries.size > maxSize) {
+            entries.remove(entries.keys.first())
+            evictions++
+        }
+    }
+
+    actual fun getOrPut(key: K, defaultValue: () -> V): V =
+        get(key) ?: defaultValue().also { set(key, it) }
+
+    actual val stats: CacheStats
+        get() = CacheStats(hits, misses, evictions, entries.size)
+
+    actual fun resetStats() {
+        hits = 0
+        misses = 0
+        evictions = 0
+    }
+
+    actual fun clear() {
+        entries.clear()
+    }
+}
@@ -1,7 +1,10 @@
 package com.meamoria.lexurgy.sc
 
-actual fun <T, U, R> Iterable<T>.fastZipMap(other: Iterable<U>, function: (T, U) -> R): List<R> =
-    zip(other).map { function(it.first, it.second) }
+actual fun <T, U, R> List<T>.fastZipMap(
+    other: List<U>,
+    policy: ExecutionPolicy,
+    function: (T, U) -> R,
+): List<R> = List(minOf(size, other.size)) { function(this[it], other[it]) }
 
 actual class LscRuleCrashed actual constructor(
     actual val reason: Exception,
@@ -13,3 +16,22 @@ actual class LscRuleCrashed actual constructor(
         "Rule $rule encountered a programming error when applied to word $currentWord (originally $originalWord)",
         reason
     )
+
+actual class ConcurrentCounter {
+    private var count = 0L
+
+    actual fun add(amount: Long) {
+        count += amount
+    }
+
+    actual fun increment() {
+        count++
+    }
+
+    actual fun reset() {
+        count = 0
+    }
+
+    actual val total: Long
+        get() = count
+}
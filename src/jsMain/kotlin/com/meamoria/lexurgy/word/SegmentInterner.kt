@@ -0,0 +1,19 @@
+package com.meamoria.lexurgy.word
+
+actual class SegmentInterner actual constructor(actual val capacity: Int) {
+    private val ids = HashMap<Segment, Int>()
+    private val segments = ArrayList<Segment>()
+
+    actual val size: Int
+        get() = segments.size
+
+    actual fun idOf(segment: Segment): Int =
+        ids[segment] ?: if (segments.size == capacity) NO_SEGMENT_ID else {
+            segments.size.also {
+                segments += segment
+                ids[segment] = it
+            }
+        }
+
+    actual fun segment(id: Int): Segment = segments[id]
+}
@@ -0,0 +1,36 @@
+package com.meamoria.lexurgy.benchmark
+
+import com.meamoria.lexurgy.loadList
+import com.meamoria.lexurgy.sc.SoundChanger
+import com.meamoria.lexurgy.sc.SoundChangesFileLoader
+import com.meamoria.lexurgy.sc.soundChangerFromLscFile
+import java.nio.file.FileSystems
+import java.nio.file.Path
+
+/**
+ * The example sound changes in the ``test`` directory, each with the
+ * word list they're meant to be run on
+ */
+enum class ExampleChanges(val lscName: String, val wordlistName: String) {
+    KHARULIAN("kharulian", "pk_full_conjugated_verbs"),
+    MUIPIDAN("muipidan", "ptr_test_1"),
+    NITHERWE("nitherwe", "pn_finite_verbs"),
+    SYLLABIAN("syllabian", "proto-syllabian"),
+    ALL_ERRORS("test_all_errors", "test_all_errors");
+
+    val lscPath: Path
+        get() = examplePath("$lscName.lsc")
+
+    fun loadText(): String = SoundChangesFileLoader().load(lscPath).joinToString("\n")
+
+    fun loadSoundChanger(): SoundChanger = soundChangerFromLscFile(lscPath)
+
+    fun loadWords(): List<String> = loadList(examplePath("$wordlistName.wli"))
+}
+
+/**
+ * The benchmarks are run from the project directory by default;
+ * set ``lexurgy.examples`` to run them from somewhere else.
+ */
+fun examplePath(name: String): Path =
+    FileSystems.getDefault().getPath(System.getProperty("lexurgy.examples", "test"), name)
@@ -0,0 +1,88 @@
+package com.meamoria.lexurgy.benchmark
+
+import com.meamoria.lexurgy.sc.Declarations
+import com.meamoria.lexurgy.sc.ExecutionMode
+import com.meamoria.lexurgy.sc.LscInterpreter
+import com.meamoria.lexurgy.sc.SoundChanger
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class ParseFileBenchmark {
+    @Param
+    lateinit var changes: ExampleChanges
+
+    private lateinit var text: String
+
+    @Setup
+    fun setUp() {
+        text = changes.loadText()
+    }
+
+    @Benchmark
+    fun parseFile(): Any = LscInterpreter().parseFile(text)
+
+    @Benchmark
+    fun fromLsc(): SoundChanger = SoundChanger.fromLsc(text)
+}
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class ParsePhoneticBenchmark {
+    @Param
+    lateinit var changes: ExampleChanges
+
+    private lateinit var declarations: Declarations
+    private lateinit var words: List<String>
+
+    @Setup
+    fun setUp() {
+        declarations = changes.loadSoundChanger().initialDeclarations
+        words = changes.loadWords()
+    }
+
+    @Benchmark
+    fun parsePhonetic(blackhole: Blackhole) {
+        for (word in words) blackhole.consume(declarations.parsePhonetic(word))
+    }
+}
+
+/**
+ * Full runs of the example sound changes over their word lists,
+ * in both execution modes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+open class ChangeBenchmark {
+    @Param
+    lateinit var changes: ExampleChanges
+
+    @Param
+    lateinit var mode: ExecutionMode
+
+    private lateinit var changer: SoundChanger
+    private lateinit var words: List<String>
+
+    @Setup
+    fun setUp() {
+        changer = changes.loadSoundChanger().withExecutionMode(mode)
+        words = changes.loadWords()
+    }
+
+    @Benchmark
+    fun change(): List<Result<String>> = changer.changeWithIndividualErrors(words)
+}
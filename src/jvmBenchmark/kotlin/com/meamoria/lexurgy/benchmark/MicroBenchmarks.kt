@@ -0,0 +1,186 @@
+package com.meamoria.lexurgy.benchmark
+
+import com.meamoria.lexurgy.sc.*
+import com.meamoria.lexurgy.word.StandardWord
+import com.meamoria.lexurgy.word.Word
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Combines every symbol in the Kharulian declarations with every
+ * diacritic, which exercises most of the feature system
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class MatrixBenchmark {
+    private lateinit var declarations: Declarations
+    private lateinit var updates: List<Pair<Matrix, Matrix>>
+    private lateinit var symbolMatrices: List<Matrix>
+
+    @Setup
+    fun setUp() {
+        declarations = ExampleChanges.KHARULIAN.loadSoundChanger().initialDeclarations
+        with(declarations) {
+            updates = symbols.flatMap { symbol ->
+                diacritics.map { symbol.matrix to it.matrix }
+            }
+            symbolMatrices = updates.map { (matrix, update) -> matrix.update(update) }.filter {
+                runCatching { it.toSymbol() }.isSuccess
+            }
+        }
+    }
+
+    @Benchmark
+    fun update(blackhole: Blackhole) {
+        with(declarations) {
+            for ((matrix, update) in updates) blackhole.consume(matrix.update(update))
+        }
+    }
+
+    /**
+     * Looks up symbols with a warm cache, as they are for most of a run
+     */
+    @Benchmark
+    fun toSymbol(blackhole: Blackhole) {
+        with(declarations) {
+            for (matrix in symbolMatrices) blackhole.consume(matrix.toSymbol())
+        }
+    }
+
+    @State(Scope.Thread)
+    open class FreshDeclarations {
+        lateinit var declarations: Declarations
+
+        @Setup(Level.Invocation)
+        fun setUp(benchmark: MatrixBenchmark) {
+            val original = benchmark.declarations
+            declarations = Declarations(original.features, original.diacritics, original.symbols)
+        }
+    }
+
+    /**
+     * Looks up symbols with a cold cache, as they are the first
+     * time each matrix turns up
+     */
+    @Benchmark
+    fun toSymbolUncached(fresh: FreshDeclarations, blackhole: Blackhole) {
+        with(fresh.declarations) {
+            for (matrix in symbolMatrices) blackhole.consume(matrix.toSymbol())
+        }
+    }
+}
+
+/**
+ * Resyllabifies the Syllabian words (as they are just before syncope)
+ * with the second set of syllable patterns in the Syllabian changes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class SyllabifierBenchmark {
+    private lateinit var syllabifier: Syllabifier
+    private lateinit var words: List<Word>
+
+    @Setup
+    fun setUp() {
+        val changer = ExampleChanges.SYLLABIAN.loadSoundChanger()
+        val declarations = changer.rules.flatMap { it.anchoredSteps }
+            .filterIsInstance<SoundChanger.SyllabificationStep>()
+            .map { it.declarations }
+            .filter { it.syllabifier?.patterns?.isNotEmpty() == true }[1]
+        syllabifier = declarations.syllabifier!!
+        words = changer.changeWithIntermediates(ExampleChanges.SYLLABIAN.loadWords())
+            .getValue("before-syncope")
+            .map { StandardWord(declarations.parsePhonetic(it, syllabify = false).segments) }
+    }
+
+    @Benchmark
+    fun syllabify(blackhole: Blackhole) {
+        for (word in words) blackhole.consume(syllabifier.syllabify(word))
+    }
+}
+
+/**
+ * A single simple rule over lots of short words, in each filter mode.
+ * These are the rules that used to be timed by hand in ``ClassSpeedTest``.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class SimpleRuleBenchmark {
+    @Param("simul", "ltr", "rtl")
+    lateinit var ruleMode: String
+
+    @Param("50000")
+    var wordCount: Int = 0
+
+    private lateinit var killAlphabetChanger: SoundChanger
+    private lateinit var reverseAlphabetChanger: SoundChanger
+    private lateinit var reverseAlphabetFloatingChanger: SoundChanger
+    private lateinit var voicingChanger: SoundChanger
+    private lateinit var words: List<String>
+    private lateinit var wordsWithDiacritics: List<String>
+    private lateinit var wordsWithVowels: List<String>
+
+    @Setup
+    fun setUp() {
+        val alphabet =
+            "{a, b, c, d, e, f, g, h, i, j, k, l, m, n, o, p, q, r, s, t, u, v, w, x, y, z}"
+        val reversedAlphabet =
+            "{z, y, x, w, v, u, t, s, r, q, p, o, n, m, l, k, j, i, h, g, f, e, d, c, b, a}"
+        val mode = if (ruleMode == "simul") "" else " $ruleMode"
+
+        killAlphabetChanger = SoundChanger.fromLsc(
+            """
+                kill-alphabet$mode:
+                    $alphabet => *
+            """.trimIndent()
+        )
+        reverseAlphabetChanger = SoundChanger.fromLsc(
+            """
+                reverse-alphabet$mode:
+                    $alphabet => $reversedAlphabet
+            """.trimIndent()
+        )
+        reverseAlphabetFloatingChanger = SoundChanger.fromLsc(
+            """
+                Feature +pointless
+                Diacritic \:\( (floating) [+pointless]
+                reverse-alphabet-floating$mode:
+                    $alphabet => $reversedAlphabet
+            """.trimIndent()
+        )
+        voicingChanger = SoundChanger.fromLsc(
+            """
+                voicing$mode:
+                    {p, t, k} => {b, d, g} / {a, e, i} _ {a, e, i}
+            """.trimIndent()
+        )
+        words = List(wordCount) { "(zzzz)" }
+        wordsWithDiacritics = List(wordCount) { "(z:(z:(z:(z:()" }
+        wordsWithVowels = List(wordCount) { "apatakapeti" }
+    }
+
+    @Benchmark
+    fun killAlphabet(): List<String> = killAlphabetChanger.change(words)
+
+    @Benchmark
+    fun reverseAlphabet(): List<String> = reverseAlphabetChanger.change(words)
+
+    @Benchmark
+    fun reverseAlphabetFloating(): List<String> = reverseAlphabetFloatingChanger.change(wordsWithDiacritics)
+
+    @Benchmark
+    fun voicing(): List<String> = voicingChanger.change(wordsWithVowels)
+}
@@ -5,11 +5,15 @@ import com.github.ajalt.clikt.core.ProgramResult
 import com.github.ajalt.clikt.core.subcommands
 import com.github.ajalt.clikt.parameters.arguments.argument
 import com.github.ajalt.clikt.parameters.arguments.multiple
+import com.github.ajalt.clikt.parameters.groups.OptionGroup
 import com.github.ajalt.clikt.parameters.options.default
 import com.github.ajalt.clikt.parameters.options.flag
 import com.github.ajalt.clikt.parameters.options.multiple
 import com.github.ajalt.clikt.parameters.options.option
+import com.github.ajalt.clikt.parameters.types.int
 import com.github.ajalt.clikt.parameters.types.path
+import com.github.ajalt.clikt.parameters.types.restrictTo
+import com.meamoria.lexurgy.sc.ExecutionPolicy
 import com.meamoria.lexurgy.sc.LscRuleCrashed
 import com.meamoria.lexurgy.sc.changeFiles
 import com.meamoria.lexurgy.server.runServer
@@ -42,6 +46,26 @@ fun runErrorProne(developer: Boolean, block: () -> Unit) {
     }
 }
 
+/**
+ * The options for spreading the words between threads,
+ * shared by every command that applies sound changes
+ */
+class ExecutionOptions : OptionGroup() {
+    val threads by option(
+        "--threads",
+        help = "The number of threads to apply the changes with. Defaults to one per available processor."
+    ).int().restrictTo(min = 1)
+    val chunkSize by option(
+        "--chunk-size",
+        help = "The number of words each thread changes at a time. " +
+                "By default, Lexurgy picks a chunk size based on the number of words and threads."
+    ).int().restrictTo(min = 1)
+
+    val policy: ExecutionPolicy
+        get() = chunkSize?.let { ExecutionPolicy.withChunkSize(it, threads = threads) }
+            ?: ExecutionPolicy(threads = threads)
+}
+
 class Lexurgy : CliktCommand() {
     override fun run() = Unit
 }
@@ -110,6 +134,29 @@ class SC : CliktCommand(
         help = "Write the full trace when Lexurgy encounters a fatal error. " +
                 "Use this if you want to submit a bug report."
     ).flag("-u", "--user", default = false)
+    val execution by ExecutionOptions()
+    val checkpointDir by option(
+        "--checkpoint-dir",
+        help = "A directory to save checkpoints in. If provided, --start-at doesn't skip the earlier rules; " +
+                "instead, Lexurgy picks up from the latest saved checkpoint that's still valid."
+    ).path()
+    val checkpointAt by option(
+        "-c", "--checkpoint",
+        help = "A rule to save a checkpoint before. Can be provided multiple times. " +
+                "Only has an effect if --checkpoint-dir is provided."
+    ).multiple()
+    val incremental by option(
+        "--incremental",
+        help = "Save a checkpoint before every rule, and pick up from the last rule that hasn't " +
+                "changed since the previous run. Checkpoints go in --checkpoint-dir if provided, " +
+                "otherwise in a directory next to CHANGES."
+    ).flag(default = false)
+    val profile by option(
+        "--profile",
+        help = "Record how long each rule takes and how much matching work it does. " +
+                "Prints a report of the slowest rules and writes the full profile to a .json file " +
+                "with the suffix \"profile\" next to each output file."
+    ).flag(default = false)
 
     @ExperimentalTime
     override fun run() {
@@ -127,7 +174,12 @@ class SC : CliktCommand(
                 intermediates = intermediates,
                 romanize = romanize,
                 compareStages = compareStages,
-                compareVersions = compareVersions && romanize
+                compareVersions = compareVersions && romanize,
+                executionPolicy = execution.policy,
+                checkpointDir = checkpointDir,
+                checkpointAt = checkpointAt,
+                incremental = incremental,
+                profile = profile,
             )
         }
     }
@@ -141,11 +193,12 @@ class Server : CliktCommand(
             "See documentation for full overview."
 ) {
     val changes by argument().path(mustBeReadable = true)
+    val execution by ExecutionOptions()
 
     @ExperimentalTime
     override fun run() {
         runErrorProne(true) {
-            runServer(changes)
+            runServer(changes, execution.policy)
         }
     }
 }
@@ -1,5 +1,50 @@
 package com.meamoria.lexurgy.sc
 
-import java.util.concurrent.ConcurrentHashMap
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.RemovalListener
 
-actual typealias Cache<K, V> = ConcurrentHashMap<K, V>
+/**
+ * Backed by Caffeine, which uses W-TinyLFU to decide what to evict
+ */
+actual class Cache<K : Any, V : Any> actual constructor(actual val maxSize: Int) {
+    private val hits = ConcurrentCounter()
+    private val misses = ConcurrentCounter()
+    private val evictions = ConcurrentCounter()
+
+    private val cache: com.github.benmanes.caffeine.cache.Cache<K, V> = Caffeine.newBuilder()
+        .maximumSize(maxSize.toLong())
+        // Evict on the calling thread rather than the common pool, so that
+        // the cache never holds on to more than it should for long
+        .executor(Runnable::run)
+        .removalListener(RemovalListener<K, V> { _, _, cause ->
+            if (cause.wasEvicted()) evictions.increment()
+        })
+        .build()
+
+    actual operator fun get(key: K): V? = cache.getIfPresent(key).also {
+        if (it == null) misses.increment() else hits.increment()
+    }
+
+    actual operator fun set(key: K, value: V) {
+        cache.put(key, value)
+    }
+
+    actual fun getOrPut(key: K, defaultValue: () -> V): V =
+        get(key) ?: defaultValue().also { cache.put(key, it) }
+
+    actual val stats: CacheStats
+        get() {
+            cache.cleanUp()
+            return CacheStats(hits.total, misses.total, evictions.total, cache.estimatedSize().toInt())
+        }
+
+    actual fun resetStats() {
+        hits.reset()
+        misses.reset()
+        evictions.reset()
+    }
+
+    actual fun clear() {
+        cache.invalidateAll()
+    }
+}
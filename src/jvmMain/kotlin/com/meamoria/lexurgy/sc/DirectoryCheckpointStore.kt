@@ -0,0 +1,45 @@
+package com.meamoria.lexurgy.sc
+
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+
+/**
+ * Saves each checkpoint as a file in the specified directory,
+ * so that checkpoints last between runs.
+ */
+class DirectoryCheckpointStore(val directory: Path) : CheckpointStore {
+    // A file that can't be decoded (e.g. one left over from an
+    // older version) is treated as if it weren't there
+    override fun load(key: String): Checkpoint? {
+        val file = pathFor(key).toFile()
+        return if (file.exists()) Checkpoint.decodeOrNull(file.readText()) else null
+    }
+
+    // The checkpoint is written to a temporary file and then moved into place,
+    // so that an interrupted run never leaves half a checkpoint behind
+    override fun save(key: String, checkpoint: Checkpoint) {
+        Files.createDirectories(directory)
+        val temp = Files.createTempFile(directory, key, ".tmp")
+        try {
+            temp.toFile().writeText(checkpoint.encode())
+            try {
+                Files.move(temp, pathFor(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(temp, pathFor(key), StandardCopyOption.REPLACE_EXISTING)
+            }
+        } finally {
+            Files.deleteIfExists(temp)
+        }
+    }
+
+    // The fingerprint is on the first line, so there's
+    // no need to read the whole checkpoint
+    override fun fingerprint(key: String): String? {
+        val file = pathFor(key).toFile()
+        return if (file.exists()) file.bufferedReader().use { it.readLine() } else null
+    }
+
+    private fun pathFor(key: String): Path = directory.resolve("$key.lcp")
+}
@@ -0,0 +1,58 @@
+package com.meamoria.lexurgy.sc
+
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import java.util.concurrent.atomic.LongAdder
+
+actual class ConcurrentCounter {
+    private val adder = LongAdder()
+
+    actual fun add(amount: Long) {
+        adder.add(amount)
+    }
+
+    actual fun increment() {
+        adder.increment()
+    }
+
+    actual fun reset() {
+        adder.reset()
+    }
+
+    actual val total: Long
+        get() = adder.sum()
+}
+
+@Serializable
+data class ProfileJson(
+    val totalNanos: Long,
+    val steps: List<StepProfileJson>,
+)
+
+@Serializable
+data class StepProfileJson(
+    val kind: String,
+    val name: String,
+    val nanos: Long,
+    val runs: Long,
+    val wordsChanged: Long,
+    val claimAttempts: Long,
+    val claims: Long,
+    val transformations: Long,
+)
+
+/**
+ * Encodes this profile as JSON, for other tools to read
+ */
+fun Profile.toJson(): String = Json.encodeToString(
+    ProfileJson.serializer(),
+    ProfileJson(
+        totalNanos,
+        steps.map {
+            StepProfileJson(
+                it.kind.string, it.name, it.nanos, it.runs, it.wordsChanged,
+                it.claimAttempts, it.claims, it.transformations,
+            )
+        },
+    ),
+)
@@ -3,7 +3,11 @@ package com.meamoria.lexurgy.sc
 import com.meamoria.lexurgy.*
 import java.io.FileNotFoundException
 import java.nio.file.Path
-import kotlin.streams.toList
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.time.DurationUnit
 import kotlin.time.ExperimentalTime
 import kotlin.time.measureTimedValue
@@ -22,10 +26,21 @@ fun changeFiles(
     intermediates: Boolean = false,
     romanize: Boolean = true,
     compareStages: Boolean = false,
-    compareVersions: Boolean = false
+    compareVersions: Boolean = false,
+    executionPolicy: ExecutionPolicy = ExecutionPolicy.DEFAULT,
+    checkpointDir: Path? = null,
+    checkpointAt: List<String> = emptyList(),
+    incremental: Boolean = false,
+    profile: Boolean = false,
 ) {
     console("Loading sound changes from $changesPath")
     val changer = soundChangerFromLscFile(changesPath)
+        .withExecutionPolicy(executionPolicy)
+        .withProfiler(if (profile) Profiler() else null)
+    val realCheckpointDir = checkpointDir ?: if (incremental) defaultCheckpointDir(changesPath) else null
+    val realCheckpointAt =
+        if (incremental) (checkpointAt + changer.rules.mapNotNull { it.rule?.name }).distinct()
+        else checkpointAt
     changer.changeFiles(
         wordsPaths,
         startAt = startAt,
@@ -38,10 +53,19 @@ fun changeFiles(
         intermediates = intermediates,
         romanize = romanize,
         compareStages = compareStages,
-        compareVersions = compareVersions
+        compareVersions = compareVersions,
+        checkpointStore = realCheckpointDir?.let(::DirectoryCheckpointStore),
+        checkpointAt = realCheckpointAt,
     )
 }
 
+/**
+ * Where incremental runs keep their checkpoints if no directory is specified:
+ * a directory next to the changes file, named after it.
+ */
+fun defaultCheckpointDir(changesPath: Path): Path =
+    changesPath.resolveSibling(changesPath.toFile().nameWithoutExtension + "_checkpoints")
+
 fun soundChangerFromLscFile(path: Path): SoundChanger =
     SoundChanger.fromLsc(SoundChangesFileLoader().load(path).joinToString("\n"))
 
@@ -60,7 +84,9 @@ fun SoundChanger.changeFiles(
     intermediates: Boolean = false,
     romanize: Boolean = true,
     compareStages: Boolean = false,
-    compareVersions: Boolean = false
+    compareVersions: Boolean = false,
+    checkpointStore: CheckpointStore? = null,
+    checkpointAt: List<String> = emptyList(),
 ) {
     for (wordsPath in wordsPaths) {
         val outPath = wordsPath.resolveSibling(outDir).resolve(wordsPath.fileName)
@@ -85,7 +111,10 @@ fun SoundChanger.changeFiles(
                 stopBefore = stopBefore,
                 debugWords = debugWords,
                 romanize = romanize,
-            ) { it: String -> debug(it) }
+                debug = { it: String -> debug(it) },
+                checkpointStore = checkpointStore,
+                checkpointAt = checkpointAt,
+            )
         }
 
         val newSuccessfulOutput = if (allErrors) {
@@ -140,6 +169,15 @@ fun SoundChanger.changeFiles(
             dumpList(markupPath, versionCompare, suffix = outSuffix)
             console("Wrote comparison markup to ${suffixPath(markupPath, outSuffix)}")
         }
+
+        profiler?.let {
+            val profile = it.profile()
+            it.reset()
+            console(profile.report())
+            val profilePath = suffixPath(outPath, "profile").replaceExtension("json")
+            profilePath.toFile().writeText(profile.toJson())
+            console("Wrote the profile to $profilePath")
+        }
     }
 }
 
@@ -161,8 +199,89 @@ private fun makeVersionComparisons(
     }
 }
 
-actual fun <T, U, R> Iterable<T>.fastZipMap(other: Iterable<U>, function: (T, U) -> R): List<R> =
-    zip(other).parallelStream().map { function(it.first, it.second) }.toList()
+actual fun <T, U, R> List<T>.fastZipMap(
+    other: List<U>,
+    policy: ExecutionPolicy,
+    function: (T, U) -> R,
+): List<R> {
+    val size = minOf(this.size, other.size)
+    val workers = policy.threads ?: Runtime.getRuntime().availableProcessors()
+    val chunkSize = policy.chunkSize(size, workers)
+    if (policy.isSequential(size) || chunkSize >= size) {
+        return List(size) { function(this[it], other[it]) }
+    }
+
+    val results = arrayOfNulls<Any?>(size)
+    val tasks = (0 until size step chunkSize).map { chunkStart ->
+        {
+            for (i in chunkStart until minOf(chunkStart + chunkSize, size)) {
+                results[i] = function(this[i], other[i])
+            }
+        }
+    }
+    (policy.executor ?: defaultExecutor(policy.threads)).executeAll(tasks)
+
+    @Suppress("UNCHECKED_CAST")
+    return results.asList() as List<R>
+}
+
+/**
+ * Wraps this executor so that a sound changer's execution
+ * policy can use it to run its chunks of words.
+ */
+fun Executor.asTaskExecutor(): TaskExecutor = TaskExecutor { tasks ->
+    joinAll(tasks.map { CompletableFuture.runAsync(it, this) })
+}
+
+private fun joinAll(futures: List<CompletableFuture<*>>) {
+    try {
+        CompletableFuture.allOf(*futures.toTypedArray()).join()
+    } catch (e: CompletionException) {
+        throw e.cause ?: e
+    }
+}
+
+private val commonPoolExecutor: TaskExecutor = ForkJoinPool.commonPool().asTaskExecutor()
+
+private fun defaultExecutor(threads: Int?): TaskExecutor =
+    if (threads == null) commonPoolExecutor
+    else SizedPool.executorFor(threads)
+
+/**
+ * The pool for execution policies that ask for a particular number
+ * of threads. There's only ever one: when a policy asks for more
+ * threads than it has, it's replaced by a bigger one (and shut down
+ * once the tasks already given to it are done), and policies that ask
+ * for fewer threads only use that many of its threads at once.
+ */
+private object SizedPool {
+    private var pool: ForkJoinPool? = null
+
+    fun executorFor(threads: Int): TaskExecutor = TaskExecutor { tasks ->
+        val next = AtomicInteger()
+        // Each worker keeps taking tasks until there are none left
+        val worker = Runnable {
+            while (true) {
+                val index = next.getAndIncrement()
+                if (index >= tasks.size) break
+                tasks[index]()
+            }
+        }
+        // Submitting happens under the lock, so a pool is never
+        // shut down between being picked and being given its tasks
+        val futures = synchronized(this) {
+            val current = poolWithAtLeast(threads)
+            List(minOf(threads, tasks.size)) { CompletableFuture.runAsync(worker, current) }
+        }
+        joinAll(futures)
+    }
+
+    private fun poolWithAtLeast(threads: Int): ForkJoinPool {
+        pool?.let { if (it.parallelism >= threads) return it }
+        pool?.shutdown()
+        return ForkJoinPool(threads).also { pool = it }
+    }
+}
 
 class LscFileNotFound(path: Path) : LscUserError(
     "Can't compare output words to ${path.fileName}; the file doesn't exist"
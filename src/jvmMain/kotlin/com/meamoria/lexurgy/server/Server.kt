@@ -1,5 +1,6 @@
 package com.meamoria.lexurgy.server
 
+import com.meamoria.lexurgy.sc.ExecutionPolicy
 import com.meamoria.lexurgy.sc.soundChangerFromLscFile
 import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
@@ -39,8 +40,8 @@ data class StringCollector(val strings: MutableList<String> = mutableListOf()) :
     }
 }
 
-fun runServer(changes: Path) {
-    val changer = soundChangerFromLscFile(changes)
+fun runServer(changes: Path, executionPolicy: ExecutionPolicy = ExecutionPolicy.DEFAULT) {
+    val changer = soundChangerFromLscFile(changes).withExecutionPolicy(executionPolicy)
 
     while (true) {
         try {
@@ -0,0 +1,34 @@
+package com.meamoria.lexurgy.word
+
+import java.util.concurrent.ConcurrentHashMap
+
+actual class SegmentInterner actual constructor(actual val capacity: Int) {
+    private val ids = ConcurrentHashMap<Segment, Int>()
+
+    // Segments are stored before their ids are published in ``ids``
+    // or counted in ``size``, so any id a reader can see is already
+    // safe to look up without locking.
+    @Volatile
+    private var segments: Array<Segment?> = arrayOfNulls(minOf(64, capacity))
+
+    @Volatile
+    private var count: Int = 0
+
+    actual val size: Int
+        get() = count
+
+    actual fun idOf(segment: Segment): Int =
+        ids[segment] ?: synchronized(this) {
+            ids[segment] ?: if (count == capacity) NO_SEGMENT_ID else count.also { id ->
+                if (id == segments.size) segments = segments.copyOf(minOf(id * 2, capacity))
+                segments[id] = segment
+                count = id + 1
+                ids[segment] = id
+            }
+        }
+
+    actual fun segment(id: Int): Segment {
+        require(id in 0 until size) { "No segment has the id $id" }
+        return segments[id]!!
+    }
+}
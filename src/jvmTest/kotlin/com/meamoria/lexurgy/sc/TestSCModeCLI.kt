@@ -1,5 +1,6 @@
 package com.meamoria.lexurgy.sc
 
+import com.github.ajalt.clikt.core.BadParameterValue
 import com.github.ajalt.clikt.core.ProgramResult
 import com.meamoria.lexurgy.lexurgyCommand
 import com.meamoria.lexurgy.loadList
@@ -32,6 +33,23 @@ class TestSCModeCLI : StringSpec({
         listFrom(outDir, "ptr_test_1_ev.wli") shouldBe listFrom("ptr_test_1_ev_expected.wli")
     }
 
+    "The CLI can spread the words between a specified number of threads" {
+        val outDir = prepareOutDir("threads_cli")
+        lexurgyCommand.parse(
+            arrayOf("sc", "test/muipidan.lsc", "--out-dir", outDir, "--threads", "3", "--chunk-size", "2") +
+                    arrayOf("test/ptr_test_1.wli")
+        )
+        listFrom(outDir, "ptr_test_1_ev.wli") shouldBe listFrom("ptr_test_1_ev_expected.wli")
+    }
+
+    "The CLI rejects thread counts and chunk sizes that aren't positive" {
+        for (option in listOf("--threads", "--chunk-size")) {
+            shouldThrow<BadParameterValue> {
+                lexurgyCommand.parse(arrayOf("sc", "test/muipidan.lsc", option, "0", "test/ptr_test_1.wli"))
+            }
+        }
+    }
+
     "The CLI throws an error if a rule application fails" {
         shouldThrow<ProgramResult> {
             lexurgyCommand.parse(arrayOf("sc", "test/test_all_errors.lsc", "test/test_all_errors.wli"))
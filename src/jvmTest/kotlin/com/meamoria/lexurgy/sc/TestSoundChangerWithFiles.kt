@@ -7,6 +7,7 @@ import io.kotest.core.spec.style.StringSpec
 import io.kotest.matchers.shouldBe
 import java.nio.file.FileSystems
 import java.nio.file.Path
+import java.util.concurrent.Executors
 import kotlin.time.ExperimentalTime
 
 @Suppress("unused")
@@ -86,6 +87,40 @@ class TestSoundChangerWithFiles : StringSpec({
         pathOf(outDir, "proto-syllabian_trace.wli").toFile().exists() shouldBe false
     }
 
+    "Word-major execution should give the same words and traces as rule-major execution" {
+        val outDir = prepareOutDir("word_major")
+        changer.withExecutionMode(ExecutionMode.WORD_MAJOR).changeFiles(
+            listOf(pathOf("ptr_test_1.wli"), pathOf("ptr_test_2.wli")),
+            debugWords = listOf("cukucaku"),
+            outDir = outDir,
+        )
+        listFrom(outDir, "ptr_test_1_ev.wli") shouldBe listFrom("ptr_test_1_ev_expected.wli")
+        listFrom(outDir, "ptr_test_2_ev.wli") shouldBe listFrom("ptr_test_2_ev_expected.wli")
+        listFrom(outDir, "ptr_test_1_trace.wli") shouldBe listFrom("ptr_test_1_trace_expected.wli")
+
+        val syllabianChanger = soundChangerFromLscFile(pathOf("syllabian.lsc"))
+        syllabianChanger.withExecutionMode(ExecutionMode.WORD_MAJOR).changeFiles(
+            listOf(pathOf("proto-syllabian.wli")),
+            outDir = outDir,
+            debugWords = listOf("karapuna", "pana"),
+        )
+        listFrom(outDir, "proto-syllabian_trace.wli") shouldBe
+                listFrom("proto-syllabian_trace_many_expected.wli")
+    }
+
+    "A sound changer should be able to run on a custom executor" {
+        val pool = Executors.newFixedThreadPool(2)
+        try {
+            val policy = ExecutionPolicy(minChunkSize = 1, sequentialCutoff = 0, executor = pool.asTaskExecutor())
+            for (mode in ExecutionMode.values()) {
+                changer.withExecutionMode(mode).withExecutionPolicy(policy)
+                    .change(listFrom("ptr_test_1.wli")) shouldBe listFrom("ptr_test_1_ev_expected.wli")
+            }
+        } finally {
+            pool.shutdown()
+        }
+    }
+
     "The --compare-stages setting should print the original in a wlm file" {
         val outDir = prepareOutDir("compare_stages")
         changer.changeFiles(